@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.SpeedTests.*;
+
+/** Compares repository size and add/read-back throughput for each compression
+ *  setting.  Usage: java gitlet.CompressionSpeedTest [N] [KB]
+ *  where N files (default 200) of about KB kilobytes (default 64) of
+ *  source-like text are added to a fresh repository under each setting and
+ *  then read back out of the object store.
+ *
+ *  @author Eve Stroud
+ */
+public class CompressionSpeedTest {
+
+    /** Compression settings to compare. */
+    private static final String[] SETTINGS =
+        {"none", "deflate:1", "deflate:6", "deflate:9"};
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int kilobytes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        File dir = Files.createTempDirectory("gitlet-compression").toFile();
+        System.setProperty("user.dir", dir.getPath());
+
+        Random random = new Random(61);
+        List<String> names = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < n; i += 1) {
+            String name = "file" + i + ".java";
+            StringBuilder s = new StringBuilder();
+            while (s.length() < kilobytes * 1024) {
+                s.append(WORDS[random.nextInt(WORDS.length)]);
+                s.append(random.nextInt(8) == 0 ? "\n" : " ");
+            }
+            Utils.writeContents(Utils.join(dir, name), s.toString());
+            names.add(name);
+            bytes += s.length();
+        }
+        File readDir = Utils.join(dir, "read");
+        double megabytes = bytes / 1e6;
+
+        System.out.printf("%12s %14s %14s %16s\n",
+                "setting", "objects (KB)", "add (MB/s)", "read (MB/s)");
+        System.out.printf("--------------------------------------------------------------\n");
+        for (String setting : SETTINGS) {
+            delete(Repository.GITLET_DIR);
+            Repository.clearCaches();
+            Repository.init();
+            Config.set("compression", setting);
+
+            long start = System.nanoTime();
+            List<String> hashes = new ArrayList<>();
+            for (String name : names) {
+                Repository.add(name);
+                hashes.add(Utils.sha1File(Utils.join(dir, name)));
+            }
+            double addTime = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            readDir.mkdir();
+            for (int i = 0; i < names.size(); i += 1) {
+                try (InputStream in = Utils.openObject(hashes.get(i));
+                     OutputStream out = Files.newOutputStream(
+                         Utils.join(readDir, names.get(i)).toPath())) {
+                    in.transferTo(out);
+                }
+            }
+            double readTime = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%12s %14d %14.1f %16.1f\n", setting,
+                    size(Repository.OBJECTS_DIR) / 1024,
+                    megabytes / addTime, megabytes / readTime);
+        }
+        delete(dir);
+    }
+}
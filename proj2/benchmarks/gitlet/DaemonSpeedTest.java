@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/** Compares the throughput of commands sent to the gitlet daemon with that of
+ *  commands run as separate gitlet.Main processes.
+ *  Usage: java gitlet.DaemonSpeedTest [N]
+ *  where N is the number of add/commit/status rounds to run each way
+ *  (default 50).
+ *
+ *  @author Eve Stroud
+ */
+public class DaemonSpeedTest {
+
+    /** The class path of this JVM with each entry made absolute, before
+     *  main changes the working directory. */
+    private static final String CLASS_PATH = absoluteClassPath();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        File dir = Files.createTempDirectory("gitlet-daemon").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        cli(dir, "init").waitFor();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            Utils.writeContents(Utils.join(dir, "cold" + i + ".txt"), "cold " + i);
+            cli(dir, "add", "cold" + i + ".txt").waitFor();
+            cli(dir, "commit", "cold " + i).waitFor();
+            cli(dir, "status").waitFor();
+        }
+        double coldTime = (System.nanoTime() - start) / 1e9;
+
+        Process daemon = cli(dir, "daemon");
+        while (!Daemon.SOCKET.exists()) {
+            Thread.sleep(10);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            Utils.writeContents(Utils.join(dir, "hot" + i + ".txt"), "hot " + i);
+            Daemon.send(Daemon.SOCKET, "add", "hot" + i + ".txt");
+            Daemon.send(Daemon.SOCKET, "commit", "hot " + i);
+            Daemon.send(Daemon.SOCKET, "status");
+        }
+        double hotTime = (System.nanoTime() - start) / 1e9;
+        Daemon.send(Daemon.SOCKET, "daemon", "stop");
+        daemon.waitFor();
+
+        System.out.printf("%12s %12s %12s %14s\n", "mode", "commands", "time (s)", "commands/s");
+        System.out.printf("------------------------------------------------------\n");
+        System.out.printf("%12s %12d %12.2f %14.1f\n", "cold CLI", 3 * n, coldTime, 3 * n / coldTime);
+        System.out.printf("%12s %12d %12.2f %14.1f\n", "daemon", 3 * n, hotTime, 3 * n / hotTime);
+    }
+
+    /** Starts gitlet.Main with operands ARGS in DIR, in a new JVM with the
+     *  class path of this one. */
+    private static Process cli(File dir, String... args) throws IOException {
+        String[] command = new String[args.length + 4];
+        command[0] = "java";
+        command[1] = "-cp";
+        command[2] = CLASS_PATH;
+        command[3] = "gitlet.Main";
+        System.arraycopy(args, 0, command, 4, args.length);
+        return new ProcessBuilder(command).directory(dir)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /** Returns the class path of this JVM with each entry made absolute, so
+     *  that it can be used from another directory. */
+    private static String absoluteClassPath() {
+        StringBuilder path = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (path.length() > 0) {
+                path.append(File.pathSeparator);
+            }
+            path.append(new File(entry).getAbsolutePath());
+        }
+        return path.toString();
+    }
+}
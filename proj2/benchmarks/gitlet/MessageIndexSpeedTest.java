@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Times building and querying commit message indexes for synthetic commit
+ *  graphs of increasing size, against checking every message in the graph.
+ *  Usage: java gitlet.MessageIndexSpeedTest
+ *
+ *  Messages are made of a verb, a noun and a numbered module, such as
+ *  "Fix cache in module 1234". Exact queries ask for the message of a random
+ *  commit, and substring queries for a random "noun in module N". Adding
+ *  commits is timed by indexing APPENDED more commits after the index is
+ *  built, which only appends them to the log.
+ *
+ *  @author Eve Stroud
+ */
+public class MessageIndexSpeedTest {
+
+    /** Sizes of the graphs to test. */
+    private static final int[] SIZES = {10_000, 100_000, 1_000_000};
+    /** Number of commits added after the index is built. */
+    private static final int APPENDED = 100;
+    /** Number of queries of each kind. */
+    private static final int QUERIES = 200;
+    /** First words of the messages. */
+    private static final String[] VERBS = {
+        "Fix", "Add", "Remove", "Refactor", "Update", "Rename", "Document", "Test"
+    };
+    /** Second words of the messages. */
+    private static final String[] NOUNS = {
+        "bug", "check", "cache", "parser", "index", "merge", "status", "log"
+    };
+    /** Number of distinct modules in the messages. */
+    private static final int MODULES = 5000;
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%10s %10s %12s %10s %14s %14s %6s\n", "commits", "build ms",
+                          "append us", "base MB", "exact us/op", "scan us/op", "check");
+        System.out.printf("------------------------------------------------------------------------------\n");
+        for (int n : SIZES) {
+            timeGraph(n);
+        }
+    }
+
+    /** Builds synthetic graphs of N and N + APPENDED commits and times
+     *  indexes of them. */
+    private static void timeGraph(int n) throws IOException {
+        Random random = new Random(61);
+        int total = n + APPENDED;
+        String[] messages = new String[total];
+        int[] parents = new int[total];
+        int[] mergeParents = new int[total];
+        for (int i = 0; i < total; i += 1) {
+            messages[i] = VERBS[random.nextInt(VERBS.length)] + " "
+                + NOUNS[random.nextInt(NOUNS.length)] + " in module " + random.nextInt(MODULES);
+            parents[i] = i - 1;
+            mergeParents[i] = -1;
+        }
+        long[] textOffsets = new long[total];
+        ByteBuffer text = SpeedTests.syntheticMessages(messages, textOffsets);
+        CommitGraph graph = new CommitGraph(SpeedTests.syntheticRecords(
+                Arrays.copyOf(parents, n), Arrays.copyOf(mergeParents, n),
+                Arrays.copyOf(textOffsets, n)), text);
+        CommitGraph grown = new CommitGraph(
+                SpeedTests.syntheticRecords(parents, mergeParents, textOffsets), text);
+
+        File dir = Files.createTempDirectory("gitlet-find").toFile();
+        MessageIndex index = new MessageIndex(dir);
+        long start = System.nanoTime();
+        index.update(graph);
+        double build = (System.nanoTime() - start) / 1e6;
+        double baseSize = Utils.join(dir, "base").length() / 1e6;
+        start = System.nanoTime();
+        index.update(grown);
+        double append = (System.nanoTime() - start) / 1e3 / APPENDED;
+
+        boolean ok = true;
+        String[] exact = new String[QUERIES];
+        String[] partial = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q += 1) {
+            exact[q] = messages[random.nextInt(total)];
+            partial[q] = NOUNS[random.nextInt(NOUNS.length)] + " in module "
+                + random.nextInt(MODULES);
+        }
+        start = System.nanoTime();
+        int[][] found = new int[2 * QUERIES][];
+        for (int q = 0; q < QUERIES; q += 1) {
+            found[q] = index.find(grown, exact[q], true);
+            found[QUERIES + q] = index.find(grown, partial[q], false);
+        }
+        double indexed = (System.nanoTime() - start) / 1e3 / (2 * QUERIES);
+        start = System.nanoTime();
+        for (int q = 0; q < QUERIES; q += 1) {
+            ok &= Arrays.equals(found[q], scan(grown, exact[q], true));
+            ok &= Arrays.equals(found[QUERIES + q], scan(grown, partial[q], false));
+        }
+        double scanned = (System.nanoTime() - start) / 1e3 / (2 * QUERIES);
+        System.out.printf("%10d %10.0f %12.1f %10.1f %14.1f %14.1f %6s\n", n, build, append,
+                          baseSize, indexed, scanned, ok ? "ok" : "WRONG");
+        SpeedTests.delete(dir);
+    }
+
+    /** Returns the positions of the commits of GRAPH whose messages are
+     *  equal to TEXT, or contain it if EXACT is false, checking each one. */
+    private static int[] scan(CommitGraph graph, String text, boolean exact) {
+        int[] found = new int[graph.size()];
+        int n = 0;
+        for (int i = 0; i < graph.size(); i += 1) {
+            String message = graph.message(i);
+            if (exact ? message.equals(text) : message.contains(text)) {
+                found[n] = i;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+}
@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static gitlet.SpeedTests.*;
+
+/** Compares the object stores at large numbers of objects: loose objects
+ *  under one and two levels of directories, the pack, and the hashed store.
+ *  Usage: java gitlet.ObjectStoreSpeedTest [N...]
+ *  where each store is filled with N small objects (default 1000000 and
+ *  10000000), of 50 to 250 bytes each. The loose and hashed stores are
+ *  written TRANSACTION objects per journal transaction, as a command would
+ *  write them, and the pack in ten appends. Each store is then opened again,
+ *  and READS objects picked at random are read back, and as many objects
+ *  that are not stored are looked up.
+ *
+ *  @author Eve Stroud
+ */
+public class ObjectStoreSpeedTest {
+
+    /** The object stores compared, by setting, with "pack" for the pack. */
+    private static final String[] STORES = {"loose", "loose:2", "pack", "hashed"};
+    /** Number of objects written per journal transaction. */
+    private static final int TRANSACTION = 1000;
+    /** Number of objects read back, and of missing objects looked up. */
+    private static final int READS = 100000;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = args.length > 0
+            ? Stream.of(args).mapToInt(Integer::parseInt).toArray() : new int[] {1000000, 10000000};
+        File dir = Files.createTempDirectory("gitlet-store").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        Repository.init();
+
+        System.out.printf("%10s %10s %14s %14s %14s %10s %10s\n", "store", "objects",
+                          "write (obj/s)", "read (obj/s)", "miss (obj/s)", "size (MB)", "files");
+        System.out.printf("----------------------------------------------------------------------------------------\n");
+        for (int n : sizes) {
+            byte[][] hashes = new byte[n][];
+            for (String setting : STORES) {
+                File storeDir = Utils.join(dir, "store");
+                long start = System.nanoTime();
+                write(setting, storeDir, n, hashes);
+                double writes = n / ((System.nanoTime() - start) / 1e9);
+
+                ObjectStore store = open(setting, storeDir);
+                Random random = new Random(61);
+                start = System.nanoTime();
+                for (int i = 0; i < READS; i += 1) {
+                    try (InputStream in = store.open(Utils.bytesToHex(hashes[random.nextInt(n)]))) {
+                        in.readAllBytes();
+                    }
+                }
+                double reads = READS / ((System.nanoTime() - start) / 1e9);
+                start = System.nanoTime();
+                for (int i = 0; i < READS; i += 1) {
+                    byte[] missing = new byte[hashes[0].length];
+                    random.nextBytes(missing);
+                    if (store.contains(Utils.bytesToHex(missing))) {
+                        throw new IllegalStateException("found a missing object");
+                    }
+                }
+                double misses = READS / ((System.nanoTime() - start) / 1e9);
+
+                System.out.printf("%10s %10d %14.0f %14.0f %14.0f %10.1f %10d\n", setting, n,
+                                  writes, reads, misses, size(storeDir) / 1e6, files(storeDir));
+                Repository.clearCaches();
+                delete(storeDir);
+            }
+        }
+        delete(dir);
+    }
+
+    /** Returns the store chosen by SETTING in DIR. */
+    private static ObjectStore open(String setting, File dir) {
+        return setting.equals("pack") ? new Pack(dir) : ObjectStore.open(setting, dir);
+    }
+
+    /** Writes N new objects to the store chosen by SETTING in DIR, putting
+     *  the raw hash of the Ith in HASHES[I]. */
+    private static void write(String setting, File dir, int n, byte[][] hashes) {
+        ObjectStore store = open(setting, dir);
+        Random random = new Random(1);
+        Map<String, byte[]> appends = new HashMap<>();
+        Journal.begin();
+        for (int i = 0; i < n; i += 1) {
+            byte[] stored = new byte[50 + random.nextInt(200)];
+            random.nextBytes(stored);
+            stored[0] = Utils.RAW;
+            String hash = Utils.sha1(stored);
+            hashes[i] = Utils.hexToBytes(hash);
+            if (store instanceof Pack) {
+                appends.put(hash, stored);
+                if (appends.size() == (n + 9) / 10) {
+                    ((Pack) store).appendStored(appends);
+                    appends.clear();
+                }
+            } else {
+                store.write(hash, stored);
+                if ((i + 1) % TRANSACTION == 0) {
+                    Journal.commit();
+                    Journal.begin();
+                }
+            }
+        }
+        if (store instanceof Pack) {
+            ((Pack) store).appendStored(appends);
+        }
+        Journal.commit();
+    }
+
+    /** Returns the number of files under DIR. */
+    private static long files(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            return files.map(Path::toFile).filter(File::isFile).count();
+        }
+    }
+}
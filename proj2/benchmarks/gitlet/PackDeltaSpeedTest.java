@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.SpeedTests.*;
+
+/** Measures how much packing with deltas shrinks the history of a large,
+ *  often edited text file, and how fast its versions are read back.
+ *  Usage: java gitlet.PackDeltaSpeedTest [N] [KB]
+ *  where N versions (default 50) of a file of about KB kilobytes (default
+ *  1024) of source-like text are committed to a fresh repository, each
+ *  changing a few lines of the one before and inserting another. Every
+ *  version is read back, newest first, both from the loose objects and from
+ *  the pack.
+ *
+ *  @author Eve Stroud
+ */
+public class PackDeltaSpeedTest {
+
+    /** Number of lines changed by each version. */
+    private static final int EDITS = 20;
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int kilobytes = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        File dir = Files.createTempDirectory("gitlet-delta").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        Repository.init();
+
+        Random random = new Random(61);
+        List<String> lines = new ArrayList<>();
+        for (int length = 0; length < kilobytes * 1024; ) {
+            String line = line(random);
+            lines.add(line);
+            length += line.length() + 1;
+        }
+        File file = Utils.join(dir, "Big.java");
+        List<String> hashes = new ArrayList<>();
+        long bytes = 0;
+        for (int v = 0; v < n; v += 1) {
+            for (int e = 0; e < EDITS; e += 1) {
+                lines.set(random.nextInt(lines.size()), line(random));
+            }
+            lines.add(random.nextInt(lines.size()), line(random));
+            Utils.writeContents(file, String.join("\n", lines));
+            Repository.add(file.getName());
+            Repository.commit("Edit version " + v);
+            hashes.add(Utils.sha1File(file));
+            bytes += file.length();
+        }
+        double megabytes = bytes / 1e6;
+
+        long looseSize = size(Repository.OBJECTS_DIR);
+        double looseRead = readAll(hashes);
+        long start = System.nanoTime();
+        Repository.pack();
+        double packTime = (System.nanoTime() - start) / 1e6;
+        long packedSize = size(Repository.OBJECTS_DIR);
+        Pack.reset();
+        double packedRead = readAll(hashes);
+
+        System.out.printf("%10s %12s %12s %8s %10s %14s %14s\n", "versions", "loose (KB)",
+                "packed (KB)", "ratio", "pack ms", "loose (MB/s)", "packed (MB/s)");
+        System.out.printf("--------------------------------------------------------------------------------------\n");
+        System.out.printf("%10d %12d %12d %8.1f %10.0f %14.1f %14.1f\n", n, looseSize / 1024,
+                packedSize / 1024, (double) looseSize / packedSize, packTime,
+                megabytes / looseRead, megabytes / packedRead);
+        delete(dir);
+    }
+
+    /** Returns a random line of source-like text. */
+    private static String line(Random random) {
+        StringBuilder s = new StringBuilder();
+        for (int i = random.nextInt(12); i >= 0; i -= 1) {
+            s.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return s.toString();
+    }
+
+    /** Reads the objects with hashes HASHES, last first, returning the time
+     *  taken in seconds. */
+    private static double readAll(List<String> hashes) throws IOException {
+        long start = System.nanoTime();
+        for (int i = hashes.size() - 1; i >= 0; i -= 1) {
+            try (InputStream in = Utils.openObject(hashes.get(i))) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static gitlet.SpeedTests.*;
+
+/** Compares the throughput of a scripted import run as one command per
+ *  operation against the same import run in a RepositorySession.
+ *  Usage: java gitlet.RepositorySessionSpeedTest [N] [FILES]
+ *  where N operations (default 5000) are run against a repository of FILES
+ *  files (default 200). Every tenth operation commits; the others change a
+ *  random file and add it, or once in a while remove it.
+ *
+ *  Commands are run as Main runs them, each in its own journal transaction
+ *  after scanning the working directory, but in one process, so the time to
+ *  start the JVM is not counted. Neither is the time taken to write the
+ *  changed files, which an importer pays either way.
+ *
+ *  @author Eve Stroud
+ */
+public class RepositorySessionSpeedTest {
+
+    /** Number of operations between commits. */
+    private static final int COMMIT_EVERY = 10;
+    /** Number of operations between removals. */
+    private static final int REMOVE_EVERY = 97;
+    /** Nanoseconds spent writing changed files since the last reset. */
+    private static long writing;
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        File dir = Files.createTempDirectory("gitlet-session").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        Repository.init();
+        for (int i = 0; i < files; i += 1) {
+            Utils.writeContents(Utils.join(dir, name(i)), "version 0 of " + i + "\n");
+        }
+        Repository.add(".");
+        Repository.commit("Add files");
+
+        Random random = new Random(61);
+        writing = 0;
+        long start = System.nanoTime();
+        for (int op = 0; op < n; op += 1) {
+            Journal.begin();
+            Repository.updateIndex();
+            int i = random.nextInt(files);
+            if (op % COMMIT_EVERY == COMMIT_EVERY - 1) {
+                Repository.commit("Import " + op);
+            } else if (op % REMOVE_EVERY == REMOVE_EVERY - 1 && exists(dir, i)) {
+                Repository.rm(name(i));
+            } else {
+                Repository.add(change(dir, i, op));
+            }
+            Journal.commit();
+        }
+        double commands = n / ((System.nanoTime() - start - writing) / 1e9);
+
+        writing = 0;
+        start = System.nanoTime();
+        try (RepositorySession session = RepositorySession.open()) {
+            for (int op = 0; op < n; op += 1) {
+                int i = random.nextInt(files);
+                if (op % COMMIT_EVERY == COMMIT_EVERY - 1) {
+                    session.commit("Session import " + op);
+                } else if (op % REMOVE_EVERY == REMOVE_EVERY - 1 && exists(dir, i)) {
+                    session.rm(name(i));
+                } else {
+                    session.add(change(dir, i, op));
+                }
+            }
+            session.flush();
+        }
+        double session = n / ((System.nanoTime() - start - writing) / 1e9);
+
+        System.out.printf("%10s %8s %16s %16s %8s\n", "ops", "files", "commands (op/s)",
+                          "session (op/s)", "speedup");
+        System.out.printf("------------------------------------------------------------------\n");
+        System.out.printf("%10d %8d %16.0f %16.0f %8.1f\n", n, files, commands, session,
+                          session / commands);
+        delete(dir);
+    }
+
+    /** Returns the name of the Ith file. */
+    private static String name(int i) {
+        return "file" + i + ".txt";
+    }
+
+    /** Writes a new version of the Ith file in DIR for operation OP, and
+     *  returns its name. */
+    private static String change(File dir, int i, int op) {
+        long start = System.nanoTime();
+        Utils.writeContents(Utils.join(dir, name(i)), "version " + op + " of " + i + "\n");
+        writing += System.nanoTime() - start;
+        return name(i);
+    }
+
+    /** Returns whether the Ith file in DIR exists. */
+    private static boolean exists(File dir, int i) {
+        return Utils.join(dir, name(i)).exists();
+    }
+}
@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** Helpers shared by the speed tests.
+ *
+ *  @author Eve Stroud
+ */
+class SpeedTests {
+
+    /** Words used to generate source-like file contents. */
+    static final String[] WORDS =
+        {"public", "static", "void", "int", "return", "if", "else", "for",
+         "String", "index", "file", "hash", "commit", "tree", "=", "+", "(",
+         ")", "{", "}", ";", "new", "null", "this", "while", "size", "i"};
+
+    /** Returns the total size of the files under DIR. */
+    static long size(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            return files.map(Path::toFile).filter(File::isFile)
+                        .mapToLong(File::length).sum();
+        }
+    }
+
+    /** Deletes FILE and everything under it, if it exists. */
+    static void delete(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(file.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                 .forEach(File::delete);
+        }
+    }
+
+    /** Returns the contents of a commits file for a graph of synthetic
+     *  commits, used to benchmark walks of large histories. The Ith commit
+     *  has parent positions PARENTS[I] and MERGEPARENTS[I], and its hash is
+     *  derived from I. */
+    static ByteBuffer syntheticRecords(int[] parents, int[] mergeParents) {
+        return syntheticRecords(parents, mergeParents, new long[parents.length]);
+    }
+
+    /** Returns the contents of a commits file for a graph of synthetic
+     *  commits as above, where the text of the Ith commit is at offset
+     *  TEXTOFFSETS[I] of the messages file. */
+    static ByteBuffer syntheticRecords(int[] parents, int[] mergeParents, long[] textOffsets) {
+        int n = parents.length;
+        ByteBuffer records = ByteBuffer.allocate(CommitGraph.HEADER + n * CommitGraph.RECORD);
+        records.putInt(CommitGraph.MAGIC).putInt(CommitGraph.VERSION);
+        int[] generations = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            generations[i] = 1 + Math.max(parents[i] < 0 ? 0 : generations[parents[i]],
+                                          mergeParents[i] < 0 ? 0 : generations[mergeParents[i]]);
+            records.put(Utils.hexToBytes(Utils.sha1(Integer.toString(i))));
+            records.put(new byte[Utils.UID_LENGTH / 2]);
+            records.putInt(parents[i]).putInt(mergeParents[i]).putInt(generations[i]);
+            records.putLong(i).putLong(textOffsets[i]);
+        }
+        return records;
+    }
+
+    /** Returns the contents of a messages file holding the commit messages
+     *  MESSAGES, with empty timestamps, and sets TEXTOFFSETS[I] to the
+     *  offset of the text of the Ith commit. */
+    static ByteBuffer syntheticMessages(String[] messages, long[] textOffsets) {
+        byte[][] bytes = new byte[messages.length][];
+        int length = 0;
+        for (int i = 0; i < messages.length; i += 1) {
+            bytes[i] = messages[i].getBytes(StandardCharsets.UTF_8);
+            length += 8 + bytes[i].length;
+        }
+        ByteBuffer text = ByteBuffer.allocate(length);
+        for (int i = 0; i < messages.length; i += 1) {
+            textOffsets[i] = text.position();
+            text.putInt(0).putInt(bytes[i].length).put(bytes[i]);
+        }
+        return text;
+    }
+}
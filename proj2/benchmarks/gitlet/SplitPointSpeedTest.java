@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Times split point queries on synthetic commit graphs of increasing size.
+ *  Usage: java gitlet.SplitPointSpeedTest
+ *
+ *  Each graph is a main line of development with short side branches that
+ *  are merged back into it. Each query asks for the split point of the tip
+ *  of the main line and a new commit branched off the main line at a given
+ *  distance below its tip, so the time per query should depend on that
+ *  distance and not on the size of the graph.
+ *
+ *  @author Eve Stroud
+ */
+public class SplitPointSpeedTest {
+
+    /** Sizes of the graphs to test. */
+    private static final int[] SIZES = {10_000, 100_000, 1_000_000};
+    /** Distances below the main tip of the split points to find. */
+    private static final int[] DISTANCES = {10, 100, 1000, 10_000};
+    /** Number of times each query is run. */
+    private static final int REPEATS = 1000;
+
+    public static void main(String[] args) {
+        System.out.printf("%12s %12s %12s %14s\n", "commits", "distance", "split", "microsec/op");
+        System.out.printf("------------------------------------------------------\n");
+        for (int n : SIZES) {
+            timeGraph(n);
+        }
+    }
+
+    /** Builds a synthetic graph of about N commits and times queries on it. */
+    private static void timeGraph(int n) {
+        Random random = new Random(61);
+        int[] parents = new int[n + DISTANCES.length];
+        int[] mergeParents = new int[parents.length];
+        List<Integer> mainLine = new ArrayList<>();
+        parents[0] = -1;
+        mergeParents[0] = -1;
+        mainLine.add(0);
+        int size = 1;
+        while (size < n) {
+            int mainTip = mainLine.get(mainLine.size() - 1);
+            if (random.nextInt(50) == 0 && size + 40 < n) {
+                int sideTip = mainTip;
+                for (int i = random.nextInt(20); i >= 0; i -= 1) {
+                    parents[size] = sideTip;
+                    mergeParents[size] = -1;
+                    sideTip = size;
+                    size += 1;
+                }
+                for (int i = random.nextInt(10); i >= 0; i -= 1) {
+                    parents[size] = mainTip;
+                    mergeParents[size] = -1;
+                    mainTip = size;
+                    mainLine.add(size);
+                    size += 1;
+                }
+                parents[size] = mainTip;
+                mergeParents[size] = sideTip;
+            } else {
+                parents[size] = mainTip;
+                mergeParents[size] = -1;
+            }
+            mainLine.add(size);
+            size += 1;
+        }
+
+        int mainTip = mainLine.get(mainLine.size() - 1);
+        int[] branches = new int[DISTANCES.length];
+        for (int d = 0; d < DISTANCES.length; d += 1) {
+            branches[d] = size;
+            parents[size] = mainLine.get(Math.max(0, mainLine.size() - 1 - DISTANCES[d]));
+            mergeParents[size] = -1;
+            size += 1;
+        }
+        CommitGraph graph = new CommitGraph(
+                SpeedTests.syntheticRecords(parents, mergeParents), ByteBuffer.allocate(0));
+
+        for (int d = 0; d < DISTANCES.length && DISTANCES[d] < mainLine.size(); d += 1) {
+            int splitPoint = 0;
+            long start = System.nanoTime();
+            for (int r = 0; r < REPEATS; r += 1) {
+                splitPoint = SplitPoint.find(graph, mainTip, branches[d]);
+            }
+            double time = (System.nanoTime() - start) / 1e3 / REPEATS;
+            System.out.printf("%12d %12d %12s %14.2f\n", n, DISTANCES[d],
+                    splitPoint == parents[branches[d]] ? "ok" : "WRONG", time);
+        }
+    }
+}
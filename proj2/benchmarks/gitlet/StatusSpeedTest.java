@@ -0,0 +1,46 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/** Times the status command on a working directory of many unchanged files.
+ *  Usage: java gitlet.StatusSpeedTest [N]
+ *  where N is the number of files to create (default 50000). The first run
+ *  hashes every file; later runs should only stat them.
+ *
+ *  @author Eve Stroud
+ */
+public class StatusSpeedTest {
+
+    /** Number of times status is run on the unchanged tree. */
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        File dir = Files.createTempDirectory("gitlet-status").toFile();
+        System.setProperty("user.dir", dir.getPath());
+
+        for (int i = 0; i < n; i += 1) {
+            Utils.writeContents(Utils.join(dir, "file" + i + ".txt"),
+                    "This is file number " + i + ".\n");
+        }
+        Repository.init();
+
+        PrintStream out = System.out;
+        System.out.printf("%12s %12s %12s\n", "run", "files", "time (s)");
+        System.out.printf("--------------------------------------\n");
+        for (int run = 0; run < RUNS; run += 1) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            long start = System.nanoTime();
+            Repository.updateIndex();
+            Repository.status();
+            double time = (System.nanoTime() - start) / 1e9;
+            System.setOut(out);
+            System.out.printf("%12s %12d %12.3f\n",
+                    run == 0 ? "cold" : "unchanged", n, time);
+        }
+    }
+}
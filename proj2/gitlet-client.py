@@ -0,0 +1,33 @@
+#!/usr/bin/env python3
+"""Thin client for the gitlet daemon.
+
+Usage: python3 gitlet-client.py COMMAND OPERAND...
+
+Sends the command to the daemon of the repository in the current directory,
+started with "java gitlet.Main daemon", and prints its output. If no daemon
+is running, runs "java gitlet.Main" instead.
+"""
+
+import os
+import socket
+import sys
+
+SOCKET = os.path.join(".gitlet", "daemon.sock")
+
+
+def main(args):
+    if not os.path.exists(SOCKET):
+        os.execvp("java", ["java", "gitlet.Main"] + args)
+    with socket.socket(socket.AF_UNIX, socket.SOCK_STREAM) as sock:
+        sock.connect(SOCKET)
+        sock.sendall(b"".join(arg.encode() + b"\0" for arg in args))
+        sock.shutdown(socket.SHUT_WR)
+        while True:
+            data = sock.recv(1 << 16)
+            if not data:
+                break
+            sys.stdout.buffer.write(data)
+
+
+if __name__ == "__main__":
+    main(sys.argv[1:])
@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+
+import static gitlet.Utils.*;
+
+/** Reachability bitmaps of the branches of the current repository. The
+ * bitmap of a branch has bit i set if the commit at position i of the commit
+ * graph is reachable from the head commit of the branch, so the commits of
+ * any set of branches can be found without walking their history.
+ *
+ * The bitmap of each branch is stored in .gitlet/bitmaps/<branch> as:
+ *     {position of the head commit, hash of the head commit, bitmap}
+ * with the bitmap written by EwahBitmap.write. A stored bitmap is used as it
+ * is while the branch still points at its head commit and that commit still
+ * has the same position in the graph. When a commit is made on the branch,
+ * its position is added to the bitmap of its parent; otherwise the bitmap is
+ * built again from the graph.
+ *
+ * @author Eve Stroud
+ */
+class BranchBitmaps {
+
+    /** Directory of the stored bitmaps. */
+    static final File BITMAPS_DIR = join(Repository.GITLET_DIR, "bitmaps");
+
+    /** Returns the bitmap of the commits reachable from BRANCH in GRAPH,
+     *  updating the stored bitmap of BRANCH if it is out of date. */
+    static EwahBitmap reachable(CommitGraph graph, String branch) {
+        int head = graph.indexOf(Repository.getHashFromBranch(branch));
+        File file = join(BITMAPS_DIR, branch);
+        if (file.isFile()) {
+            ByteBuffer stored = ByteBuffer.wrap(readContents(file));
+            int tip = stored.getInt();
+            byte[] tipHash = new byte[UID_LENGTH];
+            stored.get(tipHash);
+            if (tip < graph.size()
+                && graph.hash(tip).equals(new String(tipHash, StandardCharsets.US_ASCII))) {
+                EwahBitmap bitmap = EwahBitmap.read(stored);
+                if (tip == head) {
+                    return bitmap;
+                } else if (head > tip && graph.parent(head) == tip && graph.secondParent(head) < 0) {
+                    bitmap.add(head);
+                    write(file, graph, head, bitmap);
+                    return bitmap;
+                }
+            }
+        }
+        EwahBitmap bitmap = build(graph, head);
+        write(file, graph, head, bitmap);
+        return bitmap;
+    }
+
+    /** Returns the bitmap of the commits reachable from any branch in
+     *  GRAPH. */
+    static EwahBitmap reachableFromBranches(CommitGraph graph) {
+        EwahBitmap union = new EwahBitmap();
+        for (String branch : Repository.getBranches()) {
+            union = union.or(reachable(graph, branch));
+        }
+        return union;
+    }
+
+    /** Deletes every stored bitmap, for when positions in the commit graph
+     *  change. */
+    static void clear() {
+        File[] files = BITMAPS_DIR.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Returns the bitmap of the commits reachable from the commit at
+     *  position HEAD of GRAPH, walking the graph. */
+    private static EwahBitmap build(CommitGraph graph, int head) {
+        BitSet reachable = new BitSet(graph.size());
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(head);
+        while (!stack.isEmpty()) {
+            int i = stack.pop();
+            if (i < 0 || reachable.get(i)) {
+                continue;
+            }
+            reachable.set(i);
+            stack.push(graph.parent(i));
+            stack.push(graph.secondParent(i));
+        }
+        EwahBitmap bitmap = new EwahBitmap();
+        for (int i = reachable.nextSetBit(0); i >= 0; i = reachable.nextSetBit(i + 1)) {
+            bitmap.add(i);
+        }
+        return bitmap;
+    }
+
+    /** Stores BITMAP in FILE as the bitmap of the commit at position HEAD of
+     *  GRAPH. */
+    private static void write(File file, CommitGraph graph, int head, EwahBitmap bitmap) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(head);
+            out.write(graph.hash(head).getBytes(StandardCharsets.US_ASCII));
+            bitmap.write(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        BITMAPS_DIR.mkdir();
+        writeContents(file, bytes.toByteArray());
+    }
+}
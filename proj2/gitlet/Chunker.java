@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** An OutputStream that splits what is written to it into content-defined
+ * chunks, stores each chunk as an object, and records their hashes.
+ *
+ * Chunk boundaries are chosen with FastCDC: a gear hash is rolled over the
+ * bytes, and a boundary is cut where its top bits are all zero. A stricter
+ * mask is used before the average chunk size and a looser one after it,
+ * which keeps chunk sizes close to the average. Because boundaries depend
+ * only on nearby bytes, an edit only changes the chunks around it, and
+ * appending to a file leaves all but its last chunk unchanged.
+ *
+ * @author Eve Stroud
+ */
+class Chunker extends OutputStream {
+
+    /** Smallest chunk size, except for the last chunk. */
+    static final int MIN_SIZE = 2 * 1024;
+    /** Average chunk size. */
+    static final int AVERAGE_SIZE = 8 * 1024;
+    /** Largest chunk size. */
+    static final int MAX_SIZE = 64 * 1024;
+    /** Boundary mask used before the average size (15 bits). */
+    private static final long MASK_SMALL = 0x7fffL << 49;
+    /** Boundary mask used after the average size (11 bits). */
+    private static final long MASK_LARGE = 0x7ffL << 53;
+    /** Random values added to the gear hash for each byte value. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6a09e667L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** The bytes of the current chunk. */
+    private final byte[] chunk = new byte[MAX_SIZE];
+    /** Number of bytes in the current chunk. */
+    private int size;
+    /** Hashes of the chunks cut so far. */
+    private final List<String> hashes = new ArrayList<>();
+    /** Gear hash of the current chunk. */
+    private long gear;
+
+    @Override
+    public void write(int b) {
+        chunk[size] = (byte) b;
+        size += 1;
+        gear = (gear << 1) + GEAR[b & 0xff];
+        if (size >= MIN_SIZE
+            && ((gear & (size < AVERAGE_SIZE ? MASK_SMALL : MASK_LARGE)) == 0
+                || size >= MAX_SIZE)) {
+            cut();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            write(b[i]);
+        }
+    }
+
+    /** Stores the current chunk and starts a new one. */
+    private void cut() {
+        byte[] contents = Arrays.copyOf(chunk, size);
+        String hash = Utils.sha1(contents);
+        Utils.writeObjectContents(hash, contents);
+        hashes.add(hash);
+        size = 0;
+        gear = 0;
+    }
+
+    /** Stores the last chunk, if it is not empty. */
+    @Override
+    public void close() {
+        if (size > 0) {
+            cut();
+        }
+    }
+
+    /** Returns the hashes of the chunks cut so far, in order. */
+    List<String> hashes() {
+        return hashes;
+    }
+}
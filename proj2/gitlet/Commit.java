@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.io.ObjectStreamException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /** Represents a gitlet commit object.
@@ -10,12 +13,23 @@ import java.util.Date;
  */
 public class Commit implements Dumpable {
 
+    /** Serial version of commits as written before they had a time and a
+     *  second parent, so that the commits of those repositories can still
+     *  be read. */
+    private static final long serialVersionUID = -2631787531898937331L;
+    /** Format of the timestamp of a commit. */
+    private static final String TIMESTAMP = "%1$ta %1$tb %1$td %1$tH:%1$tM:%1$tS %1$tY %1$tz";
+
     /** The parent Commit of this Commit. */
     final String parent;
+    /** The second parent of this Commit if it is a merge commit, or an empty string. */
+    final String mergeParent;
     /** The file tree of this Commit. */
     final String tree;
     /** The timestamp of this Commit. */
     final String timestamp;
+    /** The time of this Commit, in milliseconds since the epoch. */
+    final long time;
     /** The message of this Commit. */
     final String message;
     /** The SHA-1 hash of this commit. */
@@ -23,26 +37,66 @@ public class Commit implements Dumpable {
 
     /** Create a new Commit out of a parent Commit, a commit Tree, and a commit message. */
     public Commit(String parent, String tree, String message) {
+        this(parent, "", tree, message);
+    }
+
+    /** Create a new merge Commit out of two parent Commits, a commit Tree, and a commit message. */
+    public Commit(String parent, String mergeParent, String tree, String message) {
         this.parent = parent;
+        this.mergeParent = mergeParent;
         this.tree = tree;
         this.message = message;
-        timestamp = String.format("%1$ta %1$tb %1$td %1$tH:%1$tM:%1$tS %1$tY %1$tz", new Date());
-        hash = Utils.sha1(parent, tree, message, timestamp);
+        Date date = new Date();
+        time = date.getTime();
+        timestamp = String.format(TIMESTAMP, date);
+        hash = Utils.sha1(parent, mergeParent, tree, message, timestamp);
     }
 
     /** Create the initial commit for a repository. */
     public Commit() {
         parent = "";
+        mergeParent = "";
         tree = "";
         message = "initial commit";
-        timestamp = String.format("%1$ta %1$tb %1$td %1$tH:%1$tM:%1$tS %1$tY %1$tz", new Date(0));
+        time = 0;
+        timestamp = String.format(TIMESTAMP, new Date(0));
         hash = Utils.sha1(parent, tree, message, timestamp);
     }
 
+    /** Create a copy of COMMIT with second parent MERGEPARENT and time TIME. */
+    private Commit(Commit commit, String mergeParent, long time) {
+        parent = commit.parent;
+        this.mergeParent = mergeParent;
+        tree = commit.tree;
+        this.time = time;
+        timestamp = commit.timestamp;
+        message = commit.message;
+        hash = commit.hash;
+    }
+
+    /** Returns this commit as read by Java serialization, with the fields a
+     *  commit written before they existed lacks filled in: it has no second
+     *  parent, and its time is that of its timestamp. */
+    private Object readResolve() throws ObjectStreamException {
+        if (mergeParent != null && (time != 0 || parent.isEmpty())) {
+            return this;
+        }
+        long parsed = time;
+        if (parsed == 0) {
+            try {
+                parsed = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z").parse(timestamp).getTime();
+            } catch (ParseException excp) {
+                parsed = 0;
+            }
+        }
+        return new Commit(this, mergeParent == null ? "" : mergeParent, parsed);
+    }
+
     /** Return a string representation of the information stored in the commit. */
     @Override
     public String toString() {
         return "Parent: " + parent + "\n" +
+                (mergeParent.isEmpty() ? "" : "Merge parent: " + mergeParent + "\n") +
                 "Tree: " + tree + "\n" +
                 "Timestamp: " + timestamp + "\n" +
                 "Message: " + message + "\n";
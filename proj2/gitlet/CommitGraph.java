@@ -0,0 +1,397 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** A cache of the commit history that can be walked without reading any
+ * Commit objects. Each commit is given a position in the graph when it is
+ * added, after all of its parents.
+ *
+ * The graph is stored in two append-only files:
+ *     commits: "GCGR", version, then one fixed-width record per commit:
+ *         {hash (20 bytes), tree hash (20 bytes), parent position,
+ *          second parent position, generation number, time in milliseconds,
+ *          offset of its text in the messages file}
+ *     messages: {timestamp length, timestamp (UTF-8), message length,
+ *                message (UTF-8)} for each commit
+ * Parent positions are -1 for missing parents, and for both parents of the
+ * commits on the shallow boundary. The generation number of a commit is one
+ * more than the largest generation number of its parents.
+ *
+ * The files are forced to disk each time commits are added, which is before
+ * the journal makes a branch point at them. A record cut short, or whose
+ * text is missing, as a crash while adding can leave it, is ignored and
+ * overwritten by the next add. A graph missing the head of some branch,
+ * from a crash while it was being built, has the missing commits added when
+ * it is opened.
+ *
+ * @author Eve Stroud
+ */
+class CommitGraph {
+
+    /** Magic number at the start of the commits file. */
+    static final int MAGIC = 0x47434752;
+    /** Version of the commit graph format. */
+    static final int VERSION = 1;
+    /** Size of the commits file header. */
+    static final int HEADER = 8;
+    /** Length of a raw SHA-1 hash. */
+    private static final int HASH_BYTES = UID_LENGTH / 2;
+    /** Size of each record in the commits file. */
+    static final int RECORD = 2 * HASH_BYTES + 3 * 4 + 2 * 8;
+    /** Position and generation number of a missing parent. */
+    private static final int[] NO_PARENT = {-1, 0};
+
+    /** The graph of the current repository, opened on first use. */
+    private static CommitGraph repositoryGraph;
+
+    /** The commits file. */
+    private final File commitsFile;
+    /** The messages file. */
+    private final File messagesFile;
+    /** Contents of the commits file. */
+    private ByteBuffer records;
+    /** Contents of the messages file. */
+    private ByteBuffer messages;
+    /** Number of commits in the graph. */
+    private int size;
+    /** Positions of the commits in the graph by raw hash, or null until
+     *  first needed. */
+    private Map<ByteBuffer, Integer> positions;
+
+    /** Opens the commit graph stored in DIR, creating empty files if it does
+     *  not exist yet. */
+    CommitGraph(File dir) {
+        commitsFile = join(dir, "commits");
+        messagesFile = join(dir, "messages");
+        if (!commitsFile.isFile()) {
+            dir.mkdirs();
+            ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION);
+            writeContents(commitsFile, header.array());
+            writeContents(messagesFile, new byte[0]);
+        }
+        load();
+    }
+
+    /** A read-only commit graph whose commits file and messages file
+     *  contents are RECORDS and MESSAGES. */
+    CommitGraph(ByteBuffer records, ByteBuffer messages) {
+        commitsFile = null;
+        messagesFile = null;
+        this.records = records;
+        this.messages = messages;
+        size = (records.capacity() - HEADER) / RECORD;
+    }
+
+    /** Returns the commit graph of the current repository, building it from
+     *  the branches of the repository if it does not exist yet. */
+    static CommitGraph repositoryGraph() {
+        if (repositoryGraph == null) {
+            boolean exists = Repository.GRAPH_DIR.isDirectory();
+            repositoryGraph = new CommitGraph(Repository.GRAPH_DIR);
+            List<String> missing = new ArrayList<>();
+            for (String branch : Repository.getBranches()) {
+                if (!exists || repositoryGraph.indexOf(Repository.getHashFromBranch(branch)) < 0) {
+                    missing.add(branch);
+                }
+            }
+            if (!missing.isEmpty()) {
+                repositoryGraph.addAll(missing);
+            }
+        } else if (repositoryGraph.commitsFile.length() != repositoryGraph.records.capacity()) {
+            repositoryGraph.load();
+        }
+        return repositoryGraph;
+    }
+
+    /** Forgets the graph of the current repository, so it is opened again on
+     *  next use. */
+    static void reset() {
+        repositoryGraph = null;
+    }
+
+    /** Maps the commits and messages files. */
+    private void load() {
+        records = map(commitsFile);
+        messages = map(messagesFile);
+        if (records.getInt(0) != MAGIC || records.getInt(4) != VERSION) {
+            throw error("Corrupt commit graph.");
+        }
+        size = (records.capacity() - HEADER) / RECORD;
+        while (size > 0 && !hasText(size - 1)) {
+            size -= 1;
+        }
+        positions = null;
+    }
+
+    /** Returns whether the text of the commit at position I is all in the
+     *  messages file. */
+    private boolean hasText(int i) {
+        long offset = records.getLong(HEADER + i * RECORD + 2 * HASH_BYTES + 20);
+        for (int field = 0; field < 2; field += 1) {
+            if (offset < 0 || offset + 4 > messages.capacity()) {
+                return false;
+            }
+            offset += 4 + messages.getInt((int) offset);
+        }
+        return offset <= messages.capacity();
+    }
+
+    /** Forces the contents of FILE to disk. */
+    private static void force(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /** Returns a read-only mapping of the whole of FILE. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the position of the commit with hash HASH, or -1 if it is not
+     *  in the graph. The positions of all commits are hashed on the first
+     *  call, so later calls take constant time. */
+    int indexOf(String hash) {
+        if (positions == null) {
+            positions = new HashMap<>();
+            indexFrom(0);
+        }
+        Integer i = positions.get(ByteBuffer.wrap(hexToBytes(hash)));
+        return i == null ? -1 : i;
+    }
+
+    /** Adds the commits from position FROM on to positions, keyed by slices
+     *  of the records holding their hashes. */
+    private void indexFrom(int from) {
+        for (int i = from; i < size; i += 1) {
+            positions.put(records.slice(HEADER + i * RECORD, HASH_BYTES), i);
+        }
+    }
+
+    /** Returns the hash of the commit at position I. */
+    String hash(int i) {
+        return hashAt(HEADER + i * RECORD);
+    }
+
+    /** Returns the tree hash of the commit at position I. */
+    String tree(int i) {
+        return hashAt(HEADER + i * RECORD + HASH_BYTES);
+    }
+
+    /** Returns the position of the parent of the commit at position I, or -1
+     *  if it has none. */
+    int parent(int i) {
+        return records.getInt(HEADER + i * RECORD + 2 * HASH_BYTES);
+    }
+
+    /** Returns the position of the second parent of the commit at position
+     *  I, or -1 if it is not a merge commit. */
+    int secondParent(int i) {
+        return records.getInt(HEADER + i * RECORD + 2 * HASH_BYTES + 4);
+    }
+
+    /** Returns the generation number of the commit at position I. */
+    int generation(int i) {
+        return records.getInt(HEADER + i * RECORD + 2 * HASH_BYTES + 8);
+    }
+
+    /** Returns the time of the commit at position I, in milliseconds. */
+    long time(int i) {
+        return records.getLong(HEADER + i * RECORD + 2 * HASH_BYTES + 12);
+    }
+
+    /** Returns the formatted timestamp of the commit at position I. */
+    String timestamp(int i) {
+        return stringAt(messageOffset(i));
+    }
+
+    /** Returns the message of the commit at position I. */
+    String message(int i) {
+        return new String(messageBytes(i), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the UTF-8 bytes of the message of the commit at position I. */
+    byte[] messageBytes(int i) {
+        int offset = messageOffset(i);
+        offset += 4 + messages.getInt(offset);
+        byte[] bytes = new byte[messages.getInt(offset)];
+        messages.get(offset + 4, bytes);
+        return bytes;
+    }
+
+    /** Returns the offset of the text of the commit at position I in the
+     *  messages file. */
+    private int messageOffset(int i) {
+        return (int) records.getLong(HEADER + i * RECORD + 2 * HASH_BYTES + 20);
+    }
+
+    /** Returns the length-prefixed string at OFFSET in the messages file. */
+    private String stringAt(int offset) {
+        byte[] bytes = new byte[messages.getInt(offset)];
+        messages.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the hash stored at POSITION in the commits file, or an empty
+     *  string if it is all zeros. */
+    private String hashAt(int position) {
+        byte[] hash = new byte[HASH_BYTES];
+        records.get(position, hash);
+        for (byte b : hash) {
+            if (b != 0) {
+                return bytesToHex(hash);
+            }
+        }
+        return "";
+    }
+
+    /** Adds COMMIT to the graph, if it is not already in it. Its parents must
+     *  already be in the graph. */
+    void add(Commit commit) {
+        add(List.of(commit));
+    }
+
+    /** Adds the commits in COMMITS that are not already in the graph, in
+     *  order, appending them to the files of the graph in one pass. The
+     *  parents of each must already be in the graph or come before it in
+     *  COMMITS. A commit whose parent comes before it in COMMITS cannot be in
+     *  the graph yet, so only the others are looked up. */
+    void add(List<Commit> commits) {
+        Map<String, int[]> added = new HashMap<>();
+        if (commitsFile.length() > HEADER + (long) size * RECORD) {
+            try (FileChannel channel = FileChannel.open(commitsFile.toPath(),
+                     StandardOpenOption.WRITE)) {
+                channel.truncate(HEADER + (long) size * RECORD);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        try (DataOutputStream text = new DataOutputStream(new BufferedOutputStream(
+                 Files.newOutputStream(messagesFile.toPath(), StandardOpenOption.APPEND)));
+             DataOutputStream record = new DataOutputStream(new BufferedOutputStream(
+                 Files.newOutputStream(commitsFile.toPath(), StandardOpenOption.APPEND)))) {
+            long start = messagesFile.length();
+            for (Commit commit : commits) {
+                if (added.containsKey(commit.hash)
+                    || !added.containsKey(commit.parent) && indexOf(commit.hash) >= 0) {
+                    continue;
+                }
+                boolean shallow = Shallow.isBoundary(commit.hash);
+                int[] parent = shallow ? NO_PARENT : locate(commit.parent, added);
+                int[] mergeParent = shallow ? NO_PARENT : locate(commit.mergeParent, added);
+                int generation = 1 + Math.max(parent[1], mergeParent[1]);
+                long offset = start + text.size();
+                for (String s : new String[] {commit.timestamp, commit.message}) {
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    text.writeInt(bytes.length);
+                    text.write(bytes);
+                }
+                record.write(rawHash(commit.hash));
+                record.write(rawHash(commit.tree));
+                record.writeInt(parent[0]);
+                record.writeInt(mergeParent[0]);
+                record.writeInt(generation);
+                record.writeLong(commit.time);
+                record.writeLong(offset);
+                added.put(commit.hash, new int[] {size + added.size(), generation});
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            if (!added.isEmpty()) {
+                force(messagesFile);
+                force(commitsFile);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Map<ByteBuffer, Integer> known = positions;
+        int from = size;
+        load();
+        if (known != null) {
+            positions = known;
+            indexFrom(from);
+        }
+    }
+
+    /** Returns the position and generation of the commit with hash HASH,
+     *  looking in ADDED, which maps the commits being added to theirs, before
+     *  the graph, or NO_PARENT if HASH is empty or not found. */
+    private int[] locate(String hash, Map<String, int[]> added) {
+        if (hash.isEmpty()) {
+            return NO_PARENT;
+        } else if (added.containsKey(hash)) {
+            return added.get(hash);
+        }
+        int i = indexOf(hash);
+        return i < 0 ? NO_PARENT : new int[] {i, generation(i)};
+    }
+
+    /** Adds every commit reachable from the branches named BRANCHES that is
+     *  not in the graph yet, parents before children, stopping at the shallow
+     *  boundary. They are all appended at the end, in one pass. */
+    void addAll(List<String> branches) {
+        Set<String> added = new HashSet<>();
+        List<Commit> order = new ArrayList<>();
+        Deque<Commit> stack = new ArrayDeque<>();
+        for (String branch : branches) {
+            stack.push(readObject(Repository.getHashFromBranch(branch), Commit.class));
+        }
+        while (!stack.isEmpty()) {
+            Commit commit = stack.peek();
+            boolean shallow = Shallow.isBoundary(commit.hash);
+            if (added.contains(commit.hash)) {
+                stack.pop();
+            } else if (!shallow && isMissing(commit.parent, added)) {
+                stack.push(readObject(commit.parent, Commit.class));
+            } else if (!shallow && isMissing(commit.mergeParent, added)) {
+                stack.push(readObject(commit.mergeParent, Commit.class));
+            } else {
+                stack.pop();
+                order.add(commit);
+                added.add(commit.hash);
+            }
+        }
+        add(order);
+    }
+
+    /** Returns whether the commit with hash HASH, if any, is neither in ADDED
+     *  nor in the graph. */
+    private boolean isMissing(String hash, Set<String> added) {
+        return !hash.isEmpty() && !added.contains(hash) && indexOf(hash) < 0;
+    }
+
+    /** Returns the raw bytes of HASH, or 20 zero bytes if HASH is empty. */
+    private static byte[] rawHash(String hash) {
+        return hash.isEmpty() ? new byte[HASH_BYTES] : hexToBytes(hash);
+    }
+}
@@ -0,0 +1,62 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Per-repository settings, stored in the config file as one KEY=VALUE pair
+ * per line.
+ *
+ * @author Eve Stroud
+ */
+class Config {
+
+    /** Settings of the current repository, loaded on first use. */
+    private static volatile Map<String, String> values;
+
+    /** Returns the value of the setting KEY, or DEFAULTVALUE if it is not
+     *  set. */
+    static String get(String key, String defaultValue) {
+        return load().getOrDefault(key, defaultValue);
+    }
+
+    /** Sets the setting KEY to VALUE and saves the config file. */
+    static void set(String key, String value) {
+        load().put(key, value);
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            s.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        Journal.write(Repository.CONFIG, s.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the settings of the current repository, reading the config
+     *  file if it has not been read yet. */
+    private static Map<String, String> load() {
+        if (values == null) {
+            values = read(Repository.CONFIG);
+        }
+        return values;
+    }
+
+    /** Returns the settings in the config file FILE, which may be that of
+     *  another repository, or none if it does not exist. */
+    static Map<String, String> read(File file) {
+        Map<String, String> settings = new TreeMap<>();
+        if (Journal.exists(file)) {
+            for (String line : Journal.readString(file).split("\n")) {
+                int split = line.indexOf('=');
+                if (split > 0) {
+                    settings.put(line.substring(0, split).trim(), line.substring(split + 1).trim());
+                }
+            }
+        }
+        return settings;
+    }
+
+    /** Forgets the loaded settings, so they are read again on next use. */
+    static void reset() {
+        values = null;
+    }
+}
@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Serves gitlet commands for one repository from a long-running process,
+ * so that each command avoids JVM startup and reuses the repository state
+ * already in memory.
+ *
+ * The daemon listens on the Unix domain socket .gitlet/daemon.sock. A client
+ * sends the operands of one command, each followed by a NUL byte, then shuts
+ * down its side of the connection. The daemon runs the command as
+ * gitlet.Main would and replies with everything the command printed before
+ * closing the connection. Commands are run one at a time, so a client that
+ * has not sent its whole request within REQUEST_TIMEOUT_MILLIS is dropped
+ * rather than waited for. The request "daemon stop" stops the daemon. The socket is readable and writable by
+ * its owner only, since whoever can connect to it can run any command on
+ * the repository. It is bound in a private directory and only then moved
+ * into place, so it is never reachable with wider permissions.
+ *
+ * The daemon commits the journal records of its commands in groups: a
+ * command's reply is sent once its record is written to the journal, and
+ * the records are fsynced and applied together once no command has arrived
+ * for GROUP_COMMIT_MILLIS, or GROUP_COMMIT_RECORDS of them are waiting. A
+ * command whose reply was sent thus survives the daemon crashing, and a
+ * crash of the whole system loses at most the last group.
+ *
+ * While the daemon is running, commands for its repository should be sent
+ * through it rather than run with gitlet.Main.
+ *
+ * @author Eve Stroud
+ */
+class Daemon {
+
+    /** The socket the daemon of the current repository listens on. */
+    static final File SOCKET = Utils.join(Repository.GITLET_DIR, "daemon.sock");
+    /** Milliseconds the daemon waits for another command before fsyncing
+     *  the journal records of the commands it has run. */
+    static final long GROUP_COMMIT_MILLIS = 5;
+    /** Largest number of journal records the daemon fsyncs at once. */
+    static final int GROUP_COMMIT_RECORDS = 64;
+    /** Milliseconds the daemon waits for a client to send its request. */
+    static final long REQUEST_TIMEOUT_MILLIS = 2000;
+
+    /** Listens on SOCKET and runs the commands received until asked to stop. */
+    static void serve() {
+        Journal.setGroupCommit(true);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            bindPrivately(server);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            boolean running = true;
+            while (running) {
+                if (selector.select(Journal.unsyncedRecords() > 0 ? GROUP_COMMIT_MILLIS : 0) == 0) {
+                    Journal.sync();
+                    continue;
+                }
+                selector.selectedKeys().clear();
+                try (SocketChannel client = server.accept()) {
+                    if (client == null) {
+                        continue;
+                    }
+                    String[] args = readRequest(client);
+                    client.configureBlocking(true);
+                    if (args.length == 2 && args[0].equals("daemon") && args[1].equals("stop")) {
+                        running = false;
+                    } else {
+                        client.write(ByteBuffer.wrap(run(args)));
+                    }
+                } catch (IOException excp) {
+                    System.err.println(excp.getMessage());
+                }
+                if (Journal.unsyncedRecords() >= GROUP_COMMIT_RECORDS) {
+                    Journal.sync();
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot start daemon: %s", excp.getMessage());
+        } finally {
+            Journal.sync();
+            Journal.setGroupCommit(false);
+            SOCKET.delete();
+        }
+    }
+
+    /** Binds SERVER to SOCKET, readable and writable by the owner only. */
+    private static void bindPrivately(ServerSocketChannel server) throws IOException {
+        Path dir = Files.createTempDirectory(Repository.GITLET_DIR.toPath(), "daemon",
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path socket = dir.resolve(SOCKET.getName());
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            Files.move(socket, SOCKET.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+
+    /** Returns the operands of the request read from CLIENT, which is left
+     *  non-blocking. Throws IOException if CLIENT has not sent all of it
+     *  within REQUEST_TIMEOUT_MILLIS. */
+    private static String[] readRequest(SocketChannel client) throws IOException {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long deadline = System.currentTimeMillis() + REQUEST_TIMEOUT_MILLIS;
+        client.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            client.register(selector, SelectionKey.OP_READ);
+            for (int n = client.read(buffer); n >= 0; n = client.read(buffer.clear())) {
+                received.write(buffer.array(), 0, n);
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0 || n == 0 && selector.select(left) == 0) {
+                    throw new IOException("Request not received in time.");
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+        byte[] request = received.toByteArray();
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < request.length; i += 1) {
+            if (request[i] == 0) {
+                args.add(new String(request, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** Runs the command in ARGS and returns everything it printed. */
+    private static byte[] run(String[] args) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                throw Utils.error("A daemon is already running.");
+            } else if (args.length > 0 && args[0].equals("fsmonitor")) {
+                throw Utils.error("The fsmonitor cannot be run through the daemon.");
+            }
+            Main.run(args);
+        } catch (GitletException excp) {
+            Utils.message(excp.getMessage());
+            Repository.clearCaches();
+        } catch (RuntimeException excp) {
+            Utils.message("Error: %s", excp);
+            Repository.clearCaches();
+        } finally {
+            System.out.flush();
+            System.setOut(stdout);
+        }
+        return output.toByteArray();
+    }
+
+    /** Sends the command in ARGS to the daemon listening on SOCKETFILE and
+     *  returns its output. */
+    static String send(File socketFile, String... args) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(
+                 UnixDomainSocketAddress.of(socketFile.toPath()))) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            for (String arg : args) {
+                request.write(arg.getBytes(StandardCharsets.UTF_8));
+                request.write(0);
+            }
+            channel.write(ByteBuffer.wrap(request.toByteArray()));
+            channel.shutdownOutput();
+            try (InputStream in = Channels.newInputStream(channel)) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
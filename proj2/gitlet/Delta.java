@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Encodes the contents of an object as a delta against a similar base
+ * object, and rebuilds them from the base and the delta.
+ *
+ * A delta is the length of the contents it rebuilds followed by
+ * instructions, each starting with a varint N:
+ *     N even: insert the next N / 2 bytes of the delta
+ *     N odd:  copy N / 2 bytes of the base, from the offset in the varint
+ *             that follows
+ * where a varint holds 7 bits per byte, lowest first, with the high bit set
+ * on every byte but the last.
+ *
+ * Matches are found as in git's diff-delta: every BLOCK-byte block of the
+ * base at a multiple of BLOCK is indexed by a hash of its bytes, then a
+ * rolling hash of each BLOCK-byte window of the contents is looked up, and
+ * a match found is extended in both directions as far as the bytes agree.
+ *
+ * @author Eve Stroud
+ */
+class Delta {
+
+    /** Length of the blocks of the base that are indexed. */
+    static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 0x01000193;
+    /** PRIME to the power BLOCK, to take the first byte out of the hash. */
+    private static final int PRIME_POWER;
+
+    static {
+        int power = 1;
+        for (int i = 0; i < BLOCK; i += 1) {
+            power *= PRIME;
+        }
+        PRIME_POWER = power;
+    }
+
+    /** The base. */
+    private final byte[] base;
+    /** Hash table of the blocks of the base, holding one more than the
+     *  offset of the first block with each hash, or 0 if there is none. */
+    private final int[] table;
+    /** Number of bits the hash of a block is shifted by to index table. */
+    private final int shift;
+
+    /** An encoder of deltas against BASE. */
+    Delta(byte[] base) {
+        this.base = base;
+        int blocks = base.length / BLOCK;
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, 2 * blocks - 1));
+        table = new int[1 << bits];
+        shift = 32 - bits;
+        for (int offset = (blocks - 1) * BLOCK; offset >= 0; offset -= BLOCK) {
+            table[bucket(hash(base, offset))] = offset + 1;
+        }
+    }
+
+    /** Returns the length of the base. */
+    int baseLength() {
+        return base.length;
+    }
+
+    /** Returns a delta that rebuilds TARGET from the base, or null if the
+     *  delta would be longer than LIMIT bytes. */
+    byte[] encode(byte[] target, int limit) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        int pending = 0;
+        int t = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (t + BLOCK <= target.length && out.size() <= limit) {
+            int match = table[bucket(h)] - 1;
+            if (match >= 0 && Arrays.equals(base, match, match + BLOCK, target, t, t + BLOCK)) {
+                int start = t;
+                while (start > pending && match > 0 && base[match - 1] == target[start - 1]) {
+                    start -= 1;
+                    match -= 1;
+                }
+                int end = t + BLOCK;
+                int baseEnd = match + end - start;
+                while (end < target.length && baseEnd < base.length
+                       && base[baseEnd] == target[end]) {
+                    end += 1;
+                    baseEnd += 1;
+                }
+                insert(out, target, pending, start);
+                writeVarint(out, (end - start) << 1 | 1);
+                writeVarint(out, match);
+                pending = end;
+                t = end;
+                if (t + BLOCK <= target.length) {
+                    h = hash(target, t);
+                }
+            } else {
+                if (t + BLOCK < target.length) {
+                    h = h * PRIME - (target[t] & 0xff) * PRIME_POWER + (target[t + BLOCK] & 0xff);
+                }
+                t += 1;
+            }
+        }
+        insert(out, target, pending, target.length);
+        return out.size() > limit ? null : out.toByteArray();
+    }
+
+    /** Returns the length of the contents rebuilt by DELTA. */
+    static int targetLength(ByteBuffer delta) {
+        return readVarint(delta.duplicate());
+    }
+
+    /** Rebuilds the contents encoded by DELTA against BASE, writing them to
+     *  OUT starting at OFFSET. */
+    static void apply(ByteBuffer base, ByteBuffer delta, byte[] out, int offset) {
+        delta = delta.duplicate();
+        int end = offset + readVarint(delta);
+        while (offset < end) {
+            int n = readVarint(delta);
+            int length = n >>> 1;
+            if ((n & 1) == 0) {
+                delta.get(out, offset, length);
+            } else {
+                base.get(base.position() + readVarint(delta), out, offset, length);
+            }
+            offset += length;
+        }
+    }
+
+    /** Writes an instruction inserting the bytes of TARGET from START up to
+     *  END to OUT, if there are any. */
+    private static void insert(ByteArrayOutputStream out, byte[] target, int start, int end) {
+        if (end > start) {
+            writeVarint(out, (end - start) << 1);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /** Returns the hash of the BLOCK bytes of DATA at OFFSET, as updated by
+     *  the rolling hash. */
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int i = offset; i < offset + BLOCK; i += 1) {
+            h = h * PRIME + (data[i] & 0xff);
+        }
+        return h;
+    }
+
+    /** Returns the slot of table for a block with hash H. */
+    private int bucket(int h) {
+        return (h * 0x9e3779b9) >>> shift;
+    }
+
+    /** Writes the non-negative VALUE to OUT as a varint. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads a varint from IN. */
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Computes the differences between two versions of a file, line by line,
+ * and prints them in unified diff format.
+ *
+ * Lines are never held in memory. The first pass over both versions hashes
+ * each line, including its line terminator, to 64 bits and interns the hash
+ * as a small integer id, so lines are compared as ints. (Two different lines
+ * with the same 64-bit hash would be taken as equal.) The edit script is
+ * found over the two id arrays, and a second pass over both versions prints
+ * the lines of each hunk as it is reached.
+ *
+ * The edit script is found with the linear-space variant of Myers' O(ND)
+ * algorithm: the middle snake of the edit graph is found by searching
+ * forward and backward at once, and the parts before and after it are
+ * diffed in turn. If the middle snake of a part is not found within
+ * MAX_COST steps in each direction, the search gives up on it and uses
+ * histogram diff instead. Lines that occur once in each version are
+ * matched up along the longest sequence of them in the same order in both,
+ * as in patience diff; if there are none, the line that occurs least often
+ * in the old version and also occurs in the new one is taken as the anchor.
+ * The parts between anchors are diffed in turn, with Myers' algorithm once
+ * they are small enough that its search cannot give up.
+ *
+ * @author Eve Stroud
+ */
+class Diff {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+    /** Most steps taken in each direction when searching for a middle snake. */
+    static final int MAX_COST = 1024;
+    /** Most occurrences of an anchor line in histogram diff. */
+    private static final int MAX_OCCURRENCES = 64;
+    /** Initial value of the FNV-1a hash of a line. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /** Multiplier of the FNV-1a hash of a line. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Opens one version of a file. */
+    interface Source {
+        /** Returns a new stream of the contents of this version. */
+        InputStream open() throws IOException;
+    }
+
+    /** Line ids of the old version. */
+    private final int[] a;
+    /** Line ids of the new version. */
+    private final int[] b;
+    /** Whether each line of the old version is deleted. */
+    private final boolean[] deleted;
+    /** Whether each line of the new version is inserted. */
+    private final boolean[] inserted;
+
+    /** The differences between lines with ids A and lines with ids B. */
+    Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        deleted = new boolean[a.length];
+        inserted = new boolean[b.length];
+        compare();
+    }
+
+    /** Prints to OUT the differences from version OLD, named OLDNAME, to
+     *  version NEW, named NEWNAME, in unified diff format. Prints nothing if
+     *  they have the same lines. */
+    static void unified(Source old, String oldName, Source neu, String newName,
+                        OutputStream out) throws IOException {
+        Map<Long, Integer> ids = new HashMap<>();
+        Diff diff;
+        try (InputStream in = old.open()) {
+            int[] a = intern(in, ids);
+            try (InputStream in2 = neu.open()) {
+                diff = new Diff(a, intern(in2, ids));
+            }
+        }
+        List<int[]> hunks = diff.hunks();
+        if (hunks.isEmpty()) {
+            return;
+        }
+        out.write(("--- " + oldName + "\n+++ " + newName + "\n").getBytes(StandardCharsets.UTF_8));
+        try (LineReader oldLines = new LineReader(old.open());
+             LineReader newLines = new LineReader(neu.open())) {
+            for (int[] hunk : hunks) {
+                diff.printHunk(hunk, oldLines, newLines, out);
+            }
+        }
+    }
+
+    /** Returns the ids of the lines read from IN, giving each distinct line
+     *  the next unused id in IDS. */
+    static int[] intern(InputStream in, Map<Long, Integer> ids) throws IOException {
+        IntList lines = new IntList();
+        byte[] buffer = new byte[Utils.BUFFER_SIZE];
+        long hash = FNV_OFFSET;
+        boolean partial = false;
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            for (int i = 0; i < n; i += 1) {
+                hash = (hash ^ (buffer[i] & 0xff)) * FNV_PRIME;
+                partial = true;
+                if (buffer[i] == '\n') {
+                    lines.add(ids.computeIfAbsent(hash, k -> ids.size()));
+                    hash = FNV_OFFSET;
+                    partial = false;
+                }
+            }
+        }
+        if (partial) {
+            lines.add(ids.computeIfAbsent(hash, k -> ids.size()));
+        }
+        return lines.toArray();
+    }
+
+    /** Marks the deleted and inserted lines. Parts of the two versions
+     *  still to be compared are kept on a stack, so deep splits cannot
+     *  overflow the call stack. Each part is {start and end in a, start and
+     *  end in b, 1 if Myers' search gave up on a part containing it}. */
+    private void compare() {
+        Deque<int[]> parts = new ArrayDeque<>();
+        parts.push(new int[] {0, a.length, 0, b.length, 0});
+        while (!parts.isEmpty()) {
+            int[] part = parts.pop();
+            int aLo = part[0];
+            int aHi = part[1];
+            int bLo = part[2];
+            int bHi = part[3];
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                mark(aLo, aHi, bLo, bHi);
+                continue;
+            }
+            boolean small = (aHi - aLo) + (bHi - bLo) <= 2 * MAX_COST;
+            int[] split = part[4] == 0 || small ? middleSnake(aLo, aHi, bLo, bHi) : null;
+            if (split != null) {
+                parts.push(new int[] {aLo, split[0], bLo, split[1], part[4]});
+                parts.push(new int[] {split[2], aHi, split[3], bHi, part[4]});
+                continue;
+            }
+            List<int[]> anchors = uniqueAnchors(aLo, aHi, bLo, bHi);
+            if (anchors.isEmpty()) {
+                int[] anchor = anchor(aLo, aHi, bLo, bHi);
+                if (anchor == null) {
+                    mark(aLo, aHi, bLo, bHi);
+                    continue;
+                }
+                anchors.add(anchor);
+            }
+            int i = aLo;
+            int j = bLo;
+            for (int[] anchor : anchors) {
+                parts.push(new int[] {i, anchor[0], j, anchor[1], 1});
+                i = anchor[2];
+                j = anchor[3];
+            }
+            parts.push(new int[] {i, aHi, j, bHi, 1});
+        }
+    }
+
+    /** Marks lines ALO to AHI of a as deleted and lines BLO to BHI of b as
+     *  inserted. */
+    private void mark(int aLo, int aHi, int bLo, int bHi) {
+        for (int i = aLo; i < aHi; i += 1) {
+            deleted[i] = true;
+        }
+        for (int j = bLo; j < bHi; j += 1) {
+            inserted[j] = true;
+        }
+    }
+
+    /** Returns the middle snake of a shortest edit script from lines ALO to
+     *  AHI of a to lines BLO to BHI of b, as {start in a, start in b, end in
+     *  a, end in b}, or null if it is not found within MAX_COST steps. The
+     *  parts must differ in their first and last lines. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int limit = Math.min((n + m + 1) / 2, MAX_COST);
+        int offset = limit + 1;
+        int[] forward = new int[2 * limit + 3];
+        int[] backward = new int[2 * limit + 3];
+        for (int d = 0; d <= limit; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && forward[offset + k - 1] < forward[offset + k + 1]
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1 && x + backward[offset + kb] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && backward[offset + k - 1] < backward[offset + k + 1]
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + forward[offset + kf] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the lines that occur exactly once in lines ALO to AHI of a and
+     *  once in lines BLO to BHI of b, paired up along the longest sequence of
+     *  them that is in the same order in both, as {position in a, position in
+     *  b, position in a + 1, position in b + 1} in increasing order. */
+    private List<int[]> uniqueAnchors(int aLo, int aHi, int bLo, int bHi) {
+        Map<Integer, int[]> occurrences = new HashMap<>();
+        for (int i = aLo; i < aHi; i += 1) {
+            int[] seen = occurrences.computeIfAbsent(a[i], k -> new int[3]);
+            seen[0] += 1;
+            seen[1] = i;
+        }
+        for (int j = bLo; j < bHi; j += 1) {
+            int[] seen = occurrences.get(b[j]);
+            if (seen != null) {
+                seen[2] += 1;
+            }
+        }
+        IntList inA = new IntList();
+        IntList inB = new IntList();
+        for (int j = bLo; j < bHi; j += 1) {
+            int[] seen = occurrences.get(b[j]);
+            if (seen != null && seen[0] == 1 && seen[2] == 1) {
+                inA.add(seen[1]);
+                inB.add(j);
+            }
+        }
+        int[] positions = inA.toArray();
+        int[] lines = inB.toArray();
+        int[] tails = new int[positions.length];
+        int[] previous = new int[positions.length];
+        int length = 0;
+        for (int k = 0; k < positions.length; k += 1) {
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (positions[tails[mid]] < positions[k]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            previous[k] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = k;
+            length = Math.max(length, lo + 1);
+        }
+        List<int[]> anchors = new ArrayList<>();
+        for (int k = length > 0 ? tails[length - 1] : -1; k >= 0; k = previous[k]) {
+            anchors.add(new int[] {positions[k], lines[k], positions[k] + 1, lines[k] + 1});
+        }
+        Collections.reverse(anchors);
+        return anchors;
+    }
+
+    /** Returns the longest run of matching lines around the line of lines
+     *  ALO to AHI of a that occurs least often there and also occurs in
+     *  lines BLO to BHI of b, as {start in a, start in b, end in a, end in
+     *  b}, or null if there is no such line occurring at most
+     *  MAX_OCCURRENCES times. */
+    private int[] anchor(int aLo, int aHi, int bLo, int bHi) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        Map<Integer, Integer> firstInA = new HashMap<>();
+        for (int i = aLo; i < aHi; i += 1) {
+            counts.merge(a[i], 1, Integer::sum);
+            firstInA.putIfAbsent(a[i], i);
+        }
+        int best = -1;
+        int bestCount = MAX_OCCURRENCES + 1;
+        for (int j = bLo; j < bHi; j += 1) {
+            int count = counts.getOrDefault(b[j], 0);
+            if (count > 0 && count < bestCount) {
+                best = j;
+                bestCount = count;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        int i0 = firstInA.get(b[best]);
+        int j0 = best;
+        int i1 = i0;
+        int j1 = j0;
+        while (i0 > aLo && j0 > bLo && a[i0 - 1] == b[j0 - 1]) {
+            i0 -= 1;
+            j0 -= 1;
+        }
+        while (i1 < aHi && j1 < bHi && a[i1] == b[j1]) {
+            i1 += 1;
+            j1 += 1;
+        }
+        return new int[] {i0, j0, i1, j1};
+    }
+
+    /** Returns the hunks of this diff, each as {start and end in a, start
+     *  and end in b}, including CONTEXT unchanged lines around each change.
+     *  Changes separated by at most 2 * CONTEXT unchanged lines share a
+     *  hunk. */
+    List<int[]> hunks() {
+        List<int[]> hunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        int[] hunk = null;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && deleted[i] || j < b.length && inserted[j]) {
+                int i0 = i;
+                int j0 = j;
+                while (i < a.length && deleted[i]) {
+                    i += 1;
+                }
+                while (j < b.length && inserted[j]) {
+                    j += 1;
+                }
+                if (hunk != null && i0 - hunk[1] <= CONTEXT) {
+                    hunk[1] = Math.min(a.length, i + CONTEXT);
+                    hunk[3] = Math.min(b.length, j + CONTEXT);
+                } else {
+                    int before = Math.min(CONTEXT, i0);
+                    hunk = new int[] {i0 - before, Math.min(a.length, i + CONTEXT),
+                                      j0 - before, Math.min(b.length, j + CONTEXT)};
+                    hunks.add(hunk);
+                }
+            } else {
+                i += 1;
+                j += 1;
+            }
+        }
+        return hunks;
+    }
+
+    /** Prints HUNK to OUT, reading its lines from OLDLINES and NEWLINES,
+     *  which must not have been read past its start. */
+    private void printHunk(int[] hunk, LineReader oldLines, LineReader newLines,
+                           OutputStream out) throws IOException {
+        out.write(("@@ -" + range(hunk[0], hunk[1]) + " +" + range(hunk[2], hunk[3])
+                   + " @@\n").getBytes(StandardCharsets.UTF_8));
+        oldLines.skipTo(hunk[0]);
+        newLines.skipTo(hunk[2]);
+        int i = hunk[0];
+        int j = hunk[2];
+        while (i < hunk[1] || j < hunk[3]) {
+            if (i < hunk[1] && deleted[i]) {
+                printLine('-', oldLines.next(), out);
+                i += 1;
+            } else if (j < hunk[3] && inserted[j]) {
+                printLine('+', newLines.next(), out);
+                j += 1;
+            } else {
+                printLine(' ', oldLines.next(), out);
+                newLines.next();
+                i += 1;
+                j += 1;
+            }
+        }
+    }
+
+    /** Returns the range of lines START to END in a hunk header. */
+    private static String range(int start, int end) {
+        if (end == start) {
+            return start + ",0";
+        }
+        return (start + 1) + (end - start == 1 ? "" : "," + (end - start));
+    }
+
+    /** Prints LINE to OUT, prefixed by MARKER. */
+    private static void printLine(char marker, byte[] line, OutputStream out) throws IOException {
+        out.write(marker);
+        out.write(line);
+        if (line.length == 0 || line[line.length - 1] != '\n') {
+            out.write("\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Reads lines from a stream one at a time. */
+    private static class LineReader implements AutoCloseable {
+        /** The stream being read. */
+        private final InputStream in;
+        /** Number of lines read so far. */
+        private int line;
+
+        /** A reader of the lines of IN. */
+        LineReader(InputStream in) {
+            this.in = new BufferedInputStream(in, Utils.BUFFER_SIZE);
+        }
+
+        /** Returns the next line, including its terminator if it has one. */
+        byte[] next() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int c = in.read(); c >= 0; c = in.read()) {
+                bytes.write(c);
+                if (c == '\n') {
+                    break;
+                }
+            }
+            line += 1;
+            return bytes.toByteArray();
+        }
+
+        /** Skips lines until the next line read is line number TARGET. */
+        void skipTo(int target) throws IOException {
+            while (line < target) {
+                int c = in.read();
+                while (c >= 0 && c != '\n') {
+                    c = in.read();
+                }
+                line += 1;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** A growable array of ints. */
+    private static class IntList {
+        /** The elements, followed by unused space. */
+        private int[] items = new int[1024];
+        /** Number of elements. */
+        private int size;
+
+        /** Adds X to the end of this list. */
+        void add(int x) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size] = x;
+            size += 1;
+        }
+
+        /** Returns the elements of this list. */
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
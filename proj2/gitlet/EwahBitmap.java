@@ -0,0 +1,291 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** A set of non-negative ints stored as a bitmap compressed with EWAH
+ * (Enhanced Word-Aligned Hybrid) run-length encoding.
+ *
+ * The bitmap is split into 64-bit words. Runs of words that are all zeros
+ * or all ones are stored as a count, and other words are stored as they
+ * are. The encoded form is a sequence of marker words, each followed by
+ * literal words. A marker word holds, from its lowest bit up:
+ *     the bit of its run (1 bit), the number of words in its run (32 bits),
+ *     the number of literal words that follow it (31 bits)
+ * and stands for its run followed by its literals.
+ *
+ * Bits can only be added in increasing order, and set operations work on
+ * the encoded forms directly, a run at a time.
+ *
+ * @author Eve Stroud
+ */
+class EwahBitmap {
+
+    /** Most words in the run of one marker word. */
+    private static final long MAX_RUN = (1L << 32) - 1;
+    /** Most literal words following one marker word. */
+    private static final long MAX_LITERALS = (1L << 31) - 1;
+
+    /** The encoded words, followed by unused space. */
+    private long[] words = new long[4];
+    /** Number of encoded words. */
+    private int size = 1;
+    /** Position of the last marker word. */
+    private int marker;
+    /** Number of bitmap words the encoded words stand for. */
+    private long coveredWords;
+
+    /** Returns the marker word for a run of RUN words of bit BIT followed by
+     *  LITERALS literal words. */
+    private static long markerWord(boolean bit, long run, long literals) {
+        return (bit ? 1 : 0) | run << 1 | literals << 33;
+    }
+
+    /** Returns the bit of the run of marker word M. */
+    private static boolean runBit(long m) {
+        return (m & 1) != 0;
+    }
+
+    /** Returns the number of words in the run of marker word M. */
+    private static long runLength(long m) {
+        return (m >>> 1) & MAX_RUN;
+    }
+
+    /** Returns the number of literal words following marker word M. */
+    private static long literals(long m) {
+        return m >>> 33;
+    }
+
+    /** Appends W to the encoded words. */
+    private void push(long w) {
+        if (size == words.length) {
+            words = Arrays.copyOf(words, 2 * size);
+        }
+        words[size] = w;
+        size += 1;
+    }
+
+    /** Appends a run of N words of bit BIT to the bitmap. */
+    private void addRun(boolean bit, long n) {
+        coveredWords += n;
+        while (n > 0) {
+            long m = words[marker];
+            if (literals(m) == 0 && (runLength(m) == 0 || runBit(m) == bit)
+                && runLength(m) < MAX_RUN) {
+                long added = Math.min(n, MAX_RUN - runLength(m));
+                words[marker] = markerWord(bit, runLength(m) + added, 0);
+                n -= added;
+            } else {
+                marker = size;
+                push(markerWord(bit, 0, 0));
+            }
+        }
+    }
+
+    /** Appends the word W to the bitmap. */
+    private void addWord(long w) {
+        if (w == 0 || w == -1L) {
+            addRun(w != 0, 1);
+            return;
+        }
+        if (literals(words[marker]) == MAX_LITERALS) {
+            marker = size;
+            push(markerWord(false, 0, 0));
+        }
+        words[marker] += 1L << 33;
+        push(w);
+        coveredWords += 1;
+    }
+
+    /** Removes the last word of the bitmap and returns it. */
+    private long removeLastWord() {
+        long m = words[marker];
+        coveredWords -= 1;
+        if (literals(m) > 0) {
+            words[marker] = m - (1L << 33);
+            size -= 1;
+            return words[size];
+        }
+        words[marker] = markerWord(runBit(m), runLength(m) - 1, 0);
+        return runBit(m) ? -1L : 0;
+    }
+
+    /** Adds I to this set. I must not be smaller than any int in it. */
+    void add(int i) {
+        long word = i >>> 6;
+        long bit = 1L << (i & 63);
+        if (word < coveredWords - 1) {
+            throw new IllegalArgumentException("bits must be added in increasing order");
+        } else if (word == coveredWords - 1) {
+            addWord(removeLastWord() | bit);
+        } else {
+            addRun(false, word - coveredWords);
+            addWord(bit);
+        }
+    }
+
+    /** Returns the number of ints in this set. */
+    long cardinality() {
+        long count = 0;
+        for (int p = 0; p < size; p += 1 + (int) literals(words[p])) {
+            long m = words[p];
+            if (runBit(m)) {
+                count += 64 * runLength(m);
+            }
+            for (int k = 1; k <= literals(m); k += 1) {
+                count += Long.bitCount(words[p + k]);
+            }
+        }
+        return count;
+    }
+
+    /** Calls ACTION on each int in this set, in increasing order. */
+    void forEach(IntConsumer action) {
+        long word = 0;
+        for (int p = 0; p < size; p += 1 + (int) literals(words[p])) {
+            long m = words[p];
+            if (runBit(m)) {
+                for (long i = 64 * word; i < 64 * (word + runLength(m)); i += 1) {
+                    action.accept((int) i);
+                }
+            }
+            word += runLength(m);
+            for (int k = 1; k <= literals(m); k += 1) {
+                for (long w = words[p + k]; w != 0; w &= w - 1) {
+                    action.accept((int) (64 * word + Long.numberOfTrailingZeros(w)));
+                }
+                word += 1;
+            }
+        }
+    }
+
+    /** Returns the union of this set and OTHER. */
+    EwahBitmap or(EwahBitmap other) {
+        EwahBitmap result = new EwahBitmap();
+        Cursor a = new Cursor(this);
+        Cursor b = new Cursor(other);
+        while (!a.done() && !b.done()) {
+            if (a.inRun() && b.inRun()) {
+                long n = Math.min(a.runLeft, b.runLeft);
+                result.addRun(a.bit || b.bit, n);
+                a.skip(n);
+                b.skip(n);
+            } else if (a.inRun() || b.inRun()) {
+                Cursor run = a.inRun() ? a : b;
+                Cursor literal = a.inRun() ? b : a;
+                long n = run.bit ? Math.min(run.runLeft, literal.literalsLeft) : 1;
+                if (run.bit) {
+                    result.addRun(true, n);
+                } else {
+                    result.addWord(literal.literal());
+                }
+                a.skip(n);
+                b.skip(n);
+            } else {
+                result.addWord(a.literal() | b.literal());
+                a.skip(1);
+                b.skip(1);
+            }
+        }
+        for (Cursor rest : new Cursor[] {a, b}) {
+            while (!rest.done()) {
+                if (rest.inRun()) {
+                    long n = rest.runLeft;
+                    result.addRun(rest.bit, n);
+                    rest.skip(n);
+                } else {
+                    result.addWord(rest.literal());
+                    rest.skip(1);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Walks the words of a bitmap a run or a literal at a time. */
+    private static class Cursor {
+        /** The bitmap being walked. */
+        private final EwahBitmap bitmap;
+        /** Position of the current marker word. */
+        private int p;
+        /** Bit of the current run. */
+        private boolean bit;
+        /** Words left in the current run. */
+        private long runLeft;
+        /** Literal words left after the current run. */
+        private long literalsLeft;
+
+        /** A cursor at the start of BITMAP. */
+        Cursor(EwahBitmap bitmap) {
+            this.bitmap = bitmap;
+            p = -1;
+            next();
+        }
+
+        /** Moves to the next marker word with words left, if any. */
+        private void next() {
+            while (runLeft == 0 && literalsLeft == 0 && p < bitmap.size) {
+                p += p < 0 ? 1 : 1 + (int) literals(bitmap.words[p]);
+                if (p < bitmap.size) {
+                    long m = bitmap.words[p];
+                    bit = runBit(m);
+                    runLeft = runLength(m);
+                    literalsLeft = literals(m);
+                }
+            }
+        }
+
+        /** Returns whether every word has been walked. */
+        boolean done() {
+            return runLeft == 0 && literalsLeft == 0;
+        }
+
+        /** Returns whether the cursor is in a run. */
+        boolean inRun() {
+            return runLeft > 0;
+        }
+
+        /** Returns the literal word at the cursor. */
+        long literal() {
+            return bitmap.words[p + 1 + (int) (literals(bitmap.words[p]) - literalsLeft)];
+        }
+
+        /** Moves past N words, which must all be in the current run or all
+         *  be literals. */
+        void skip(long n) {
+            if (runLeft > 0) {
+                runLeft -= n;
+            } else {
+                literalsLeft -= n;
+            }
+            next();
+        }
+    }
+
+    /** Writes this bitmap to OUT. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(coveredWords);
+        out.writeInt(size);
+        for (int i = 0; i < size; i += 1) {
+            out.writeLong(words[i]);
+        }
+    }
+
+    /** Reads a bitmap written by write from IN. */
+    static EwahBitmap read(ByteBuffer in) {
+        EwahBitmap bitmap = new EwahBitmap();
+        bitmap.coveredWords = in.getLong();
+        bitmap.size = in.getInt();
+        bitmap.words = new long[Math.max(1, bitmap.size)];
+        for (int i = 0; i < bitmap.size; i += 1) {
+            bitmap.words[i] = in.getLong();
+        }
+        for (int p = 0; p < bitmap.size; p += 1 + (int) literals(bitmap.words[p])) {
+            bitmap.marker = p;
+        }
+        return bitmap;
+    }
+}
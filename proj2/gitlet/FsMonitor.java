@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** Watches the working directory for changes, so that commands only need to
+ * look at the files that have changed instead of scanning every file.
+ *
+ * The fsmonitor is run with "gitlet fsmonitor" and keeps running until its
+ * process is killed. It appends what it sees to the log .gitlet/fsmonitor:
+ *     T token      first line, identifying this run of the fsmonitor
+ *     P path       the file or directory at path may have changed
+ *     O            events were lost, so any file may have changed
+ *     C cookie     the cookie file .gitlet/cookie was created
+ * The index records the token of the log it has been kept up to date with
+ * and how far into the log it has read. If the token changes, because the
+ * fsmonitor was restarted or started a new log, the working directory is
+ * scanned in full once more.
+ *
+ * Events are delivered to the fsmonitor with some delay, so before reading
+ * the log a command creates a cookie file and waits for the fsmonitor to log
+ * it. Events are delivered in order, so every change made before the cookie
+ * was created is then in the log. The command waits on a WatchService of its
+ * own for the log to change, and reads only what was appended since it last
+ * looked.
+ *
+ * @author Eve Stroud
+ */
+class FsMonitor {
+
+    /** The log of the fsmonitor of the current repository. */
+    static final File LOG = join(Repository.GITLET_DIR, "fsmonitor");
+    /** Prefix of the names of cookie files. */
+    private static final String COOKIE_PREFIX = "fsmonitor-cookie-";
+    /** Size of the log at which the fsmonitor starts a new one. */
+    private static final long LOG_LIMIT = 1 << 20;
+    /** Time to wait for the fsmonitor to log a cookie, in milliseconds. */
+    private static final long SYNC_TIMEOUT = 1000;
+
+    /** Watches the working directory. */
+    private final WatchService watcher;
+    /** Maps the keys of watched directories to their paths. */
+    private final Map<WatchKey, Path> dirs = new HashMap<>();
+    /** Path of the .gitlet directory. */
+    private final Path gitletDir = Repository.GITLET_DIR.toPath();
+    /** The open log. */
+    private OutputStream log;
+    /** Number of bytes in the log. */
+    private long logSize;
+    /** Number of logs started by this fsmonitor. */
+    private int generation;
+
+    /** An fsmonitor for the current repository that uses WATCHER. */
+    private FsMonitor(WatchService watcher) {
+        this.watcher = watcher;
+    }
+
+    /** Runs an fsmonitor for the current repository until the process is
+     *  killed. */
+    static void watch() {
+        if (runningToken() != null) {
+            throw error("An fsmonitor is already running.");
+        }
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            new FsMonitor(watcher).run();
+        } catch (IOException excp) {
+            throw error("Cannot start fsmonitor: %s", excp.getMessage());
+        }
+    }
+
+    /** Watches the working directory and logs its changes. */
+    private void run() throws IOException {
+        dirs.put(gitletDir.register(watcher, ENTRY_CREATE), gitletDir);
+        registerAll(Repository.CWD.toPath(), false);
+        startLog();
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Path dir = dirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        append("O");
+                    } else if (gitletDir.equals(dir)) {
+                        String name = event.context().toString();
+                        if (name.startsWith(COOKIE_PREFIX)) {
+                            append("C " + name);
+                        }
+                    } else if (dir != null) {
+                        Path path = dir.resolve((Path) event.context());
+                        append("P " + Repository.workingPath(path.toFile()));
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                            registerAll(path, true);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    dirs.remove(key);
+                }
+                log.flush();
+                if (logSize > LOG_LIMIT) {
+                    startLog();
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        } finally {
+            log.close();
+        }
+    }
+
+    /** Watches START and every directory under it other than the .gitlet
+     *  directory. If LOGFILES, also logs every file found, as they may have
+     *  been created before their directory was watched. */
+    private void registerAll(Path start, boolean logFiles) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs)
+                throws IOException {
+                if (path.toAbsolutePath().normalize().equals(gitletDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dirs.put(path.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs)
+                throws IOException {
+                if (logFiles) {
+                    append("P " + Repository.workingPath(path.toFile()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Replaces the log with a new one with a new token. */
+    private void startLog() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        generation += 1;
+        String token = ProcessHandle.current().pid() + "." + System.currentTimeMillis()
+                + "." + generation;
+        File tmp = join(Repository.GITLET_DIR, "fsmonitor.tmp");
+        writeContents(tmp, "T " + token + "\n");
+        Files.move(tmp.toPath(), LOG.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        logSize = LOG.length();
+        log = new BufferedOutputStream(
+            Files.newOutputStream(LOG.toPath(), StandardOpenOption.APPEND));
+    }
+
+    /** Adds LINE to the log. */
+    private void append(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        log.write(bytes);
+        logSize += bytes.length;
+    }
+
+    /** Returns the token of the log of the fsmonitor of the current
+     *  repository, or null if no fsmonitor is running. */
+    private static String runningToken() {
+        String first;
+        try (BufferedReader in = Files.newBufferedReader(LOG.toPath())) {
+            first = in.readLine();
+        } catch (IOException excp) {
+            return null;
+        }
+        if (first == null || !first.startsWith("T ")) {
+            return null;
+        }
+        String token = first.substring(2);
+        long pid = Long.parseLong(token.substring(0, token.indexOf('.')));
+        boolean alive = ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+        return alive ? token : null;
+    }
+
+    /** Returns the working paths that may have changed since INDEX was last
+     *  brought up to date with the fsmonitor log, and records in INDEX that it
+     *  is now up to date with the log. Returns null instead if any file may
+     *  have changed, because no fsmonitor is running, INDEX was not kept up to
+     *  date with its log, or it lost events. */
+    static Set<String> changedPaths(Index index) {
+        String token = runningToken();
+        if (token == null) {
+            index.setMonitor("", 0);
+            return null;
+        }
+        boolean upToDate = token.equals(index.monitorToken());
+        long start = upToDate ? index.monitorOffset() : 0;
+        String tail = sync(token, start);
+        if (tail == null) {
+            index.setMonitor("", 0);
+            return null;
+        }
+        index.setMonitor(token, start + tail.length());
+        if (!upToDate) {
+            return null;
+        }
+        Set<String> paths = new HashSet<>();
+        for (String line : tail.split("\n")) {
+            if (line.equals("O")) {
+                return null;
+            } else if (line.startsWith("P ")) {
+                byte[] path = line.substring(2).getBytes(StandardCharsets.ISO_8859_1);
+                paths.add(new String(path, StandardCharsets.UTF_8));
+            }
+        }
+        return paths;
+    }
+
+    /** Creates a cookie file and waits for the fsmonitor with token TOKEN to
+     *  log it. Returns the log from offset START up to and including the
+     *  cookie, with each byte as one character, or null if the fsmonitor did
+     *  not log the cookie in time. */
+    private static String sync(String token, long start) {
+        File cookie = join(Repository.GITLET_DIR,
+                           COOKIE_PREFIX + ProcessHandle.current().pid() + "-" + System.nanoTime());
+        String cookieLine = "C " + cookie.getName() + "\n";
+        try (WatchService logWatcher = FileSystems.getDefault().newWatchService()) {
+            Repository.GITLET_DIR.toPath().register(logWatcher, ENTRY_CREATE, ENTRY_MODIFY);
+            Files.createFile(cookie.toPath());
+            long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+            StringBuilder tail = new StringBuilder();
+            while (token.equals(runningToken())) {
+                int searched = Math.max(0, tail.length() - cookieLine.length());
+                tail.append(readLog(start + tail.length()));
+                int end = tail.indexOf(cookieLine, searched);
+                if (end >= 0) {
+                    return tail.substring(0, end + cookieLine.length());
+                }
+                long wait = deadline - System.currentTimeMillis();
+                WatchKey key = wait > 0 ? logWatcher.poll(wait, TimeUnit.MILLISECONDS) : null;
+                if (key == null) {
+                    return null;
+                }
+                key.pollEvents();
+                key.reset();
+            }
+            return null;
+        } catch (IOException | InterruptedException excp) {
+            return null;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /** Returns the log from offset START to its end, with each byte as one
+     *  character. */
+    private static String readLog(long start) throws IOException {
+        try (FileChannel channel = FileChannel.open(LOG.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) Math.max(0, channel.size() - start));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, start + bytes.position()) < 0) {
+                    break;
+                }
+            }
+            return new String(bytes.array(), 0, bytes.position(), StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+import static gitlet.Utils.*;
+
+/** Deletes the objects of the current repository that can no longer be
+ * reached, such as blobs of files that were added and then added again with
+ * other contents, and commits left behind by reset.
+ *
+ * The mark phase starts from the head commit of every branch and from the
+ * staged and committed versions in the index. Commits are found through
+ * the reachability bitmaps of the branches, which need no object reads.
+ * Their Trees are then walked a level at a time, each level in parallel; a Tree or blob already marked
+ * is not visited again, so shared subdirectories are walked once. Marks of
+ * packed objects are kept in a bitmap indexed by their position in the pack
+ * index, and marks of the objects in the object store in a concurrent set.
+ * Marking a packed object stored as a delta marks its base too, even if the
+ * base can no longer be reached, since the object cannot be read without it.
+ *
+ * The sweep phase deletes the unmarked objects of the object store and
+ * rewrites the pack without its unmarked objects. If any commit was
+ * unreachable, the commit graph is rebuilt from the branches, so it no
+ * longer lists deleted commits.
+ *
+ * @author Eve Stroud
+ */
+class GarbageCollector {
+
+    /** The pack of the repository. */
+    private final Pack pack;
+    /** Bit i is set once the object at position i of the pack is marked. */
+    private final AtomicLongArray packedMarks;
+    /** Hashes of the marked objects that are not in the pack. */
+    private final Set<String> unpackedMarks = ConcurrentHashMap.newKeySet();
+
+    /** A collector with no objects marked yet. */
+    private GarbageCollector(Pack pack) {
+        this.pack = pack;
+        packedMarks = new AtomicLongArray((pack.size() + 63) / 64);
+    }
+
+    /** Deletes every object of the current repository that is not reachable
+     *  from a branch or from the index. */
+    static void collect() {
+        GarbageCollector collector = new GarbageCollector(Pack.repositoryPack());
+        boolean allCommits = collector.markCommits();
+        collector.sweep();
+        if (!allCommits) {
+            Repository.rebuildCommitGraph();
+        }
+    }
+
+    /** Marks the object with hash HASH, and its delta base if it has one,
+     *  returning whether it was not marked already. */
+    private boolean mark(String hash) {
+        int i = pack.position(hash);
+        if (i < 0) {
+            return unpackedMarks.add(hash);
+        }
+        long bit = 1L << (i & 63);
+        if ((packedMarks.getAndAccumulate(i >>> 6, bit, (a, b) -> a | b) & bit) != 0) {
+            return false;
+        }
+        String base = pack.baseOf(i);
+        if (base != null) {
+            mark(base);
+        }
+        return true;
+    }
+
+    /** Returns whether the object at position I of the pack is marked. */
+    private boolean isMarked(int i) {
+        return (packedMarks.get(i >>> 6) & (1L << (i & 63))) != 0;
+    }
+
+    /** Marks every commit reachable from a branch, with its Tree and
+     *  everything in it, along with the versions in the index. Returns
+     *  whether every commit in the commit graph was reachable. */
+    private boolean markCommits() {
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        EwahBitmap reachable = BranchBitmaps.reachableFromBranches(graph);
+        List<String> trees = new ArrayList<>();
+        reachable.forEach(i -> {
+            mark(graph.hash(i));
+            String tree = graph.tree(i);
+            if (!tree.isEmpty() && mark(tree)) {
+                trees.add(tree);
+            }
+        });
+        markBlobs(Repository.readIndex().getStoredVersions());
+        List<String> level = trees;
+        while (!level.isEmpty()) {
+            level = level.parallelStream()
+                    .flatMap(hash -> markTree(Tree.read(hash)).stream())
+                    .collect(Collectors.toList());
+        }
+        return reachable.cardinality() == graph.size();
+    }
+
+    /** Marks the blobs in TREE and returns the hashes of its subdirectory
+     *  Trees that were not marked yet, marking them too. */
+    private List<String> markTree(Tree tree) {
+        markBlobs(tree.fileVersions());
+        List<String> unmarked = new ArrayList<>();
+        for (String subtree : tree.subtrees()) {
+            if (mark(subtree)) {
+                unmarked.add(subtree);
+            }
+        }
+        return unmarked;
+    }
+
+    /** Marks the blobs with hashes BLOBS, and the chunks of any that are
+     *  stored as chunks. */
+    private void markBlobs(Collection<String> blobs) {
+        for (String blob : blobs) {
+            if (mark(blob)) {
+                for (String chunk : chunksOf(blob)) {
+                    mark(chunk);
+                }
+            }
+        }
+    }
+
+    /** Deletes the unmarked objects from the object store and drops the
+     *  unmarked objects from the pack. */
+    private void sweep() {
+        ObjectStore store = objectStore();
+        for (String hash : store.hashes()) {
+            if (!unpackedMarks.contains(hash)) {
+                store.delete(hash);
+            }
+        }
+        for (int i = 0; i < pack.size(); i += 1) {
+            if (!isMarked(i)) {
+                pack.retain(this::isMarked);
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** An ObjectStore keeping every object in one file, indexed by an
+ * open-addressed hash table at the start of the file, so that looking an
+ * object up costs a probe or two of the mapped table however many objects
+ * there are, and no directory is ever searched.
+ *
+ * File: "GHSH", version, capacity, count, used, 0, data end (8 bytes), live
+ * bytes (8 bytes), then capacity slots of {raw hash (20 bytes), offset (8
+ * bytes)}, then the data: one entry per object, {raw hash, length (8 bytes),
+ * stored form}. The slot of an object is found by linear probing from the
+ * slot numbered by the first four bytes of its hash, which are already
+ * uniformly distributed. The offset of an empty slot is EMPTY, and that of a
+ * slot whose object was deleted is DELETED, which a probe goes past. Count is
+ * the number of objects, used the number of slots that are not EMPTY, and
+ * live bytes the size of the entries of the objects.
+ *
+ * New entries are appended after the data end, but their slots are only
+ * written by sync, after the entries are forced to disk and the data end is
+ * moved past them, so a slot never refers to an entry that is not on disk.
+ * Entries past the data end when the file is opened, left by a process that
+ * stopped before sync, are written over. Until then, this store finds them
+ * from memory.
+ *
+ * When the table would be more than MAX_LOAD full, or less than half of the
+ * data belongs to objects not deleted, the file is rebuilt beside the old
+ * one, with a table twice as large as the number of objects, and renamed
+ * over it.
+ *
+ * @author Eve Stroud
+ */
+class HashedObjectStore implements ObjectStore {
+
+    /** Name of the file of the store in the objects directory. */
+    static final String FILE_NAME = "objects.hash";
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47485348;
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+    /** Size of the file header. */
+    private static final int HEADER = 40;
+    /** Length of a raw SHA-1 hash. */
+    private static final int HASH_BYTES = UID_LENGTH / 2;
+    /** Size of a slot of the table. */
+    private static final int SLOT = HASH_BYTES + 8;
+    /** Size of the header in front of each entry. */
+    private static final int ENTRY_HEADER = HASH_BYTES + 8;
+    /** Offset in an empty slot. */
+    private static final long EMPTY = 0;
+    /** Offset in the slot of a deleted object. */
+    private static final long DELETED = -1;
+    /** Number of slots of a new table. */
+    static final int MIN_CAPACITY = 1 << 10;
+    /** Largest number of slots, so that the table can be mapped whole. */
+    static final int MAX_CAPACITY = 1 << 26;
+    /** Largest fraction of the slots, in tenths, that are not EMPTY. */
+    static final int MAX_LOAD = 7;
+    /** Bytes of deleted entries allowed beyond the live bytes before the
+     *  file is rebuilt. */
+    static final long SLACK = 1 << 20;
+    /** Largest entry read into memory rather than streamed. */
+    private static final int SMALL_ENTRY = 1 << 16;
+
+    /** The file of this store. */
+    private final File file;
+    /** The file, open for reading and writing, or null if not opened yet. */
+    private FileChannel channel;
+    /** Mapping of the header and table. */
+    private MappedByteBuffer table;
+    /** Number of slots of the table. */
+    private int capacity;
+    /** Offset at which the next entry is appended. */
+    private long end;
+    /** Offsets of the entries appended since the last sync, by hash. */
+    private final Map<String, Long> pending = new LinkedHashMap<>();
+    /** Whether the table or header changed since the last sync. */
+    private boolean dirty;
+
+    /** A store kept in FILE, which is made when an object is first added. */
+    HashedObjectStore(File file) {
+        this.file = file;
+    }
+
+    /** Opens the file, making it if it does not exist and CREATE, and
+     *  returns whether it is open. */
+    private boolean openFile(boolean create) {
+        if (channel != null) {
+            return true;
+        } else if (!file.isFile() && !create) {
+            return false;
+        }
+        try {
+            if (!file.isFile()) {
+                file.getParentFile().mkdirs();
+                File tmp = join(file.getParentFile(), file.getName() + ".tmp");
+                try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                         StandardOpenOption.READ, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                    initialize(out, MIN_CAPACITY).force();
+                    out.force(true);
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            channel.read(header, 0);
+            capacity = header.getInt(8);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY) {
+                throw error("Corrupt object store %s.", file);
+            }
+            table = channel.map(FileChannel.MapMode.READ_WRITE, 0, tableSize(capacity));
+            end = table.getLong(24);
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the size of the header and table of a file with CAPACITY
+     *  slots. */
+    private static long tableSize(int capacity) {
+        return HEADER + (long) capacity * SLOT;
+    }
+
+    /** Writes the header and an empty table of CAPACITY slots to OUT and
+     *  returns the mapping of them. */
+    private static MappedByteBuffer initialize(FileChannel out, int capacity) throws IOException {
+        MappedByteBuffer header = out.map(FileChannel.MapMode.READ_WRITE, 0, tableSize(capacity));
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, capacity)
+              .putLong(24, tableSize(capacity));
+        return header;
+    }
+
+    /** Returns the number of objects in the table. */
+    private int count() {
+        return table.getInt(12);
+    }
+
+    /** Returns the number of slots of the table that are not EMPTY. */
+    private int used() {
+        return table.getInt(16);
+    }
+
+    /** Returns the size of the entries of the objects in the table. */
+    private long liveBytes() {
+        return table.getLong(32);
+    }
+
+    /** Returns the position in the table of the slot of the object with raw
+     *  hash RAW, or of the EMPTY slot ending its probe if it is not there. */
+    private int slotOf(byte[] raw) {
+        ByteBuffer hash = ByteBuffer.wrap(raw);
+        long first = hash.getLong(0);
+        long second = hash.getLong(8);
+        int third = hash.getInt(16);
+        int mask = capacity - 1;
+        for (int i = (int) (first >>> 32) & mask, probes = 0; probes < capacity;
+             i = i + 1 & mask, probes += 1) {
+            int slot = HEADER + i * SLOT;
+            long offset = table.getLong(slot + HASH_BYTES);
+            if (offset == EMPTY
+                || offset != DELETED && table.getLong(slot) == first
+                   && table.getLong(slot + 8) == second && table.getInt(slot + 16) == third) {
+                return slot;
+            }
+        }
+        throw error("Corrupt object store %s.", file);
+    }
+
+    /** Returns the offset of the entry of the object with hash HASH, or -1
+     *  if it is not in this store. */
+    private long find(String hash) {
+        Long appended = pending.get(hash);
+        if (appended != null) {
+            return appended;
+        } else if (!openFile(false)) {
+            return -1;
+        }
+        long offset = table.getLong(slotOf(hexToBytes(hash)) + HASH_BYTES);
+        return offset == EMPTY ? -1 : offset;
+    }
+
+    /** Returns the length of the stored form in the entry at OFFSET. */
+    private long lengthAt(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(8);
+        while (length.hasRemaining()) {
+            if (channel.read(length, offset + HASH_BYTES + length.position()) < 0) {
+                throw error("Corrupt object store %s.", file);
+            }
+        }
+        return length.getLong(0);
+    }
+
+    @Override
+    public synchronized boolean contains(String hash) {
+        return find(hash) >= 0;
+    }
+
+    /** Returns a stream of the stored form of the object with hash HASH. A
+     *  large one is streamed through a channel of its own, which still
+     *  reads the right file if this one is rebuilt meanwhile. */
+    @Override
+    public synchronized InputStream open(String hash) throws IOException {
+        long offset = find(hash);
+        if (offset < 0) {
+            return null;
+        }
+        long length = lengthAt(offset);
+        if (length <= SMALL_ENTRY) {
+            ByteBuffer stored = ByteBuffer.allocate((int) length);
+            while (stored.hasRemaining()) {
+                channel.read(stored, offset + ENTRY_HEADER + stored.position());
+            }
+            return new ByteArrayInputStream(stored.array());
+        }
+        FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        return new BufferedInputStream(new EntryInputStream(in, offset + ENTRY_HEADER, length),
+                                       BUFFER_SIZE);
+    }
+
+    @Override
+    public synchronized long storedSize(String hash) {
+        long offset = find(hash);
+        try {
+            return offset < 0 ? -1 : lengthAt(offset);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void write(String hash, byte[] stored) {
+        if (contains(hash)) {
+            return;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER + stored.length);
+        entry.put(hexToBytes(hash)).putLong(stored.length).put(stored).flip();
+        try {
+            long offset = reserve();
+            while (entry.hasRemaining()) {
+                offset += channel.write(entry, offset);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        appended(hash, ENTRY_HEADER + stored.length);
+    }
+
+    @Override
+    public synchronized void store(String hash, File tmp) throws IOException {
+        if (!contains(hash)) {
+            long length = tmp.length();
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+            header.put(hexToBytes(hash)).putLong(length).flip();
+            long offset = reserve();
+            while (header.hasRemaining()) {
+                offset += channel.write(header, offset);
+            }
+            try (FileChannel in = FileChannel.open(tmp.toPath(), StandardOpenOption.READ)) {
+                for (long copied = 0; copied < length; ) {
+                    copied += in.transferTo(copied, length - copied,
+                                            channel.position(offset + copied));
+                }
+            }
+            appended(hash, ENTRY_HEADER + length);
+        }
+        tmp.delete();
+    }
+
+    /** Opens the file, rebuilding it first if the table has no room for
+     *  another object, and returns the offset of the next entry. */
+    private long reserve() {
+        openFile(true);
+        if (full(pending.size() + 1)) {
+            sync();
+            if (full(1)) {
+                rebuild();
+            }
+        }
+        return end;
+    }
+
+    /** Returns whether adding EXTRA objects would fill the table beyond
+     *  MAX_LOAD. */
+    private boolean full(int extra) {
+        return (long) (used() + extra) * 10 > (long) capacity * MAX_LOAD;
+    }
+
+    /** Records that the entry of SIZE bytes just appended holds the object
+     *  with hash HASH. */
+    private void appended(String hash, long size) {
+        pending.put(hash, end);
+        end += size;
+        Journal.storeChanged(this);
+    }
+
+    @Override
+    public synchronized Set<String> hashes() {
+        Set<String> hashes = new TreeSet<>(pending.keySet());
+        if (openFile(false)) {
+            byte[] raw = new byte[HASH_BYTES];
+            for (int i = 0; i < capacity; i += 1) {
+                int slot = HEADER + i * SLOT;
+                if (table.getLong(slot + HASH_BYTES) > 0) {
+                    table.get(slot, raw);
+                    hashes.add(bytesToHex(raw));
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /** Marks the slot of the object with hash HASH DELETED, or forgets its
+     *  entry if it was appended since the last sync. Its entry is dropped
+     *  when the file is next rebuilt. */
+    @Override
+    public synchronized void delete(String hash) {
+        if (pending.remove(hash) != null || !openFile(false)) {
+            return;
+        }
+        int slot = slotOf(hexToBytes(hash));
+        long offset = table.getLong(slot + HASH_BYTES);
+        if (offset == EMPTY) {
+            return;
+        }
+        try {
+            table.putLong(slot + HASH_BYTES, DELETED);
+            table.putInt(12, count() - 1);
+            table.putLong(32, liveBytes() - ENTRY_HEADER - lengthAt(offset));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = true;
+        Journal.storeChanged(this);
+    }
+
+    /** Forces the entries appended since the last sync to disk, moves the
+     *  data end past them, and then writes their slots, and rebuilds the
+     *  file if it holds too much data of deleted objects. */
+    @Override
+    public synchronized void sync() {
+        if (channel == null || pending.isEmpty() && !dirty) {
+            return;
+        }
+        try {
+            if (!pending.isEmpty()) {
+                channel.force(false);
+                table.putLong(24, end);
+                table.force(0, HEADER);
+                int count = count();
+                int used = used();
+                long liveBytes = liveBytes();
+                for (Map.Entry<String, Long> entry : pending.entrySet()) {
+                    byte[] raw = hexToBytes(entry.getKey());
+                    int slot = slotOf(raw);
+                    if (table.getLong(slot + HASH_BYTES) != EMPTY) {
+                        continue;
+                    }
+                    table.put(slot, raw).putLong(slot + HASH_BYTES, entry.getValue());
+                    count += 1;
+                    used += 1;
+                    liveBytes += ENTRY_HEADER + lengthAt(entry.getValue());
+                }
+                table.putInt(12, count).putInt(16, used).putLong(32, liveBytes);
+                pending.clear();
+            }
+            table.force();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = false;
+        if (end - tableSize(capacity) > 2 * liveBytes() + SLACK) {
+            rebuild();
+        }
+    }
+
+    /** Rewrites the file with the entries of the objects in the table, in
+     *  the order they were appended, under a table with twice as many
+     *  slots as objects, and renames it over the old one. The entries
+     *  appended since the last sync must have been synced. */
+    private void rebuild() {
+        int newCapacity = MIN_CAPACITY;
+        while (newCapacity < 2L * (count() + 1)) {
+            newCapacity *= 2;
+        }
+        if (newCapacity > MAX_CAPACITY) {
+            throw error("Object store %s is full.", file);
+        }
+        File tmp = join(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                copyLiveEntries(out, newCapacity);
+                out.force(true);
+            }
+            channel.close();
+            channel = null;
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            try (FileChannel dir = FileChannel.open(file.getParentFile().toPath(),
+                     StandardOpenOption.READ)) {
+                dir.force(true);
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        openFile(false);
+    }
+
+    /** Writes a file with a table of CAPACITY slots holding the objects in
+     *  the table of this one to OUT, copying their entries in order. */
+    private void copyLiveEntries(FileChannel out, int capacity) throws IOException {
+        MappedByteBuffer newTable = initialize(out, capacity);
+        long position = tableSize(capacity);
+        int count = 0;
+        long dataStart = tableSize(this.capacity);
+        DataOutputStream copy = new DataOutputStream(new BufferedOutputStream(
+            Channels.newOutputStream(out.position(position)), BUFFER_SIZE));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                 new EntryInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ),
+                                      dataStart, end - dataStart), BUFFER_SIZE))) {
+            byte[] raw = new byte[HASH_BYTES];
+            for (long offset = dataStart; offset < end; ) {
+                in.readFully(raw);
+                long length = in.readLong();
+                if (table.getLong(slotOf(raw) + HASH_BYTES) != offset) {
+                    in.skipNBytes(length);
+                } else {
+                    copy.write(raw);
+                    copy.writeLong(length);
+                    transfer(in, copy, length);
+                    insert(newTable, capacity, raw, position);
+                    position += ENTRY_HEADER + length;
+                    count += 1;
+                }
+                offset += ENTRY_HEADER + length;
+            }
+        }
+        copy.flush();
+        newTable.putInt(12, count).putInt(16, count).putLong(24, position)
+                .putLong(32, position - tableSize(capacity));
+        newTable.force();
+    }
+
+    /** Copies LENGTH bytes from IN to OUT. */
+    private static void transfer(InputStream in, DataOutputStream out, long length)
+            throws IOException {
+        byte[] buffer = new byte[(int) Math.min(length, BUFFER_SIZE)];
+        for (long copied = 0; copied < length; ) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, length - copied));
+            if (n < 0) {
+                throw new IOException("truncated object store entry");
+            }
+            out.write(buffer, 0, n);
+            copied += n;
+        }
+    }
+
+    /** Puts the raw hash RAW, with entry offset OFFSET, into the first free
+     *  slot of its probe in TABLE, which has CAPACITY slots. */
+    private static void insert(MappedByteBuffer table, int capacity, byte[] raw, long offset) {
+        int mask = capacity - 1;
+        int i = ByteBuffer.wrap(raw).getInt(0) & mask;
+        while (table.getLong(HEADER + i * SLOT + HASH_BYTES) != EMPTY) {
+            i = i + 1 & mask;
+        }
+        table.put(HEADER + i * SLOT, raw).putLong(HEADER + i * SLOT + HASH_BYTES, offset);
+    }
+
+    /** An InputStream reading a region of the file, such as the stored
+     *  form of one entry, through a channel of its own, which it closes when
+     *  closed. */
+    private static class EntryInputStream extends InputStream {
+
+        /** The channel read. */
+        private final FileChannel in;
+        /** Offset of the next byte to read. */
+        private long position;
+        /** Offset just past the stored form. */
+        private final long limit;
+
+        /** A stream of the LENGTH bytes of IN from POSITION on. */
+        EntryInputStream(FileChannel in, long position, long length) {
+            this.in = in;
+            this.position = position;
+            limit = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (position >= limit) {
+                return -1;
+            }
+            int n = in.read(ByteBuffer.wrap(b, off, (int) Math.min(len, limit - position)),
+                            position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
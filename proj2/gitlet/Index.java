@@ -1,13 +1,37 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.TreeMap;
 import java.util.Set;
 
 /** Represents the index of the repository, which keeps track of the files and
  * their versions in the working directory and staging area.
  *
+ * On disk the index is stored in a compact binary format rather than with
+ * Java serialization:
+ *     "GIDX", version, scan timestamp, fsmonitor token length, fsmonitor
+ *     token (UTF-8), fsmonitor log offset, entry count, then for each file in
+ *     path order: {path length, path (UTF-8), flags, raw 20-byte hash of each
+ *     version present, stat information if present}
+ * where bit i of the flags is set if version i is present and bit 3 is set
+ * if stat information is present. Index files written with Java
+ * serialization, before this format, are still read, and are rewritten in
+ * it by the next command that saves the index.
+ *
  * @author strbytes
  * */
 public class Index implements Dumpable {
@@ -16,12 +40,150 @@ public class Index implements Dumpable {
      *
      * Stored versions: {working directory, staged, previous commit}
      * */
-    private final Map<String, String[]> files;
-    /** Headers for the array of versions (used in toString). */
+    private final NavigableMap<String, String[]> files;
+    /** Stores file names as the key and the stat information of the working
+     * version recorded when it was last hashed.
+     *
+     * Stat information: {size, modification time in nanoseconds, inode}
+     * */
+    private final Map<String, long[]> stats;
+    /** Time, in milliseconds, at which the working directory was last scanned. */
+    private long timestamp;
+    /** Token of the fsmonitor whose log this index has been kept up to date
+     * with, or an empty string if none. */
+    private String monitorToken = "";
+    /** Offset in the fsmonitor log up to which its changes have been applied
+     * to this index. */
+    private long monitorOffset;
 
     /** Initializes the index. */
     public Index() {
         files = new TreeMap<>();
+        stats = new TreeMap<>();
+    }
+
+    /** Serial version of the index as written by Java serialization, so
+     * that those index files can still be read. */
+    private static final long serialVersionUID = -5004099209400056356L;
+
+    /** Magic number at the start of the index file. */
+    private static final int MAGIC = 0x47494458;
+    /** Version of the index file format. */
+    private static final int VERSION = 2;
+    /** Flag bit set when an entry has stat information. */
+    private static final int HAS_STAT = 1 << 3;
+    /** Length of a raw SHA-1 hash. */
+    private static final int HASH_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Reads the index stored in FILE.  Throws IllegalArgumentException in
+     * case of problems. */
+    public static Index read(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads an index from the contents of an index file in IN. */
+    static Index read(ByteBuffer in) {
+        if (in.remaining() >= 2 && in.getShort(0) == (short) 0xACED) {
+            return readSerialized(in);
+        }
+        Index index = new Index();
+        int version = in.getInt(4);
+        if (in.getInt() != MAGIC || in.getInt() < 1 || version > VERSION) {
+            throw Utils.error("Corrupt index file.");
+        }
+        index.timestamp = in.getLong();
+        if (version >= 2) {
+            byte[] token = new byte[in.getShort() & 0xffff];
+            in.get(token);
+            index.monitorToken = new String(token, StandardCharsets.UTF_8);
+            index.monitorOffset = in.getLong();
+        }
+        int count = in.getInt();
+        byte[] hash = new byte[HASH_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            byte[] path = new byte[in.getShort() & 0xffff];
+            in.get(path);
+            String fileName = new String(path, StandardCharsets.UTF_8);
+            int flags = in.get();
+            String[] versions = new String[3];
+            for (int v = 0; v < 3; v += 1) {
+                if ((flags & (1 << v)) != 0) {
+                    in.get(hash);
+                    versions[v] = Utils.bytesToHex(hash);
+                } else {
+                    versions[v] = "";
+                }
+            }
+            index.files.put(fileName, versions);
+            if ((flags & HAS_STAT) != 0) {
+                index.stats.put(fileName, new long[] {in.getLong(), in.getLong(), in.getLong()});
+            }
+        }
+        return index;
+    }
+
+    /** Reads an index written with Java serialization from IN.  It has no
+     * stat information, so its files are all hashed again on the next
+     * scan. */
+    private static Index readSerialized(ByteBuffer in) {
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        Index serialized;
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            serialized = (Index) stream.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException excp) {
+            throw Utils.error("Corrupt index file.");
+        }
+        Index index = new Index();
+        index.files.putAll(serialized.files);
+        return index;
+    }
+
+    /** Returns the contents of an index file holding this index.  Throws
+     * IllegalArgumentException in case of problems. */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(timestamp);
+            byte[] token = monitorToken.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(token.length);
+            out.write(token);
+            out.writeLong(monitorOffset);
+            out.writeInt(files.size());
+            for (Map.Entry<String, String[]> entry : files.entrySet()) {
+                byte[] path = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(path.length);
+                out.write(path);
+                String[] versions = entry.getValue();
+                long[] stat = stats.get(entry.getKey());
+                int flags = stat == null ? 0 : HAS_STAT;
+                for (int v = 0; v < 3; v += 1) {
+                    if (!versions[v].isEmpty()) {
+                        flags |= 1 << v;
+                    }
+                }
+                out.writeByte(flags);
+                for (String version : versions) {
+                    if (!version.isEmpty()) {
+                        out.write(Utils.hexToBytes(version));
+                    }
+                }
+                if (stat != null) {
+                    for (long field : stat) {
+                        out.writeLong(field);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
     }
 
     /** Returns a set of all the files currently tracked. */
@@ -29,6 +191,11 @@ public class Index implements Dumpable {
         return new HashSet<>(files.keySet());
     }
 
+    /** Returns the names of the files in the index under the directory dir. */
+    Set<String> filesUnder(String dir) {
+        return new HashSet<>(files.subMap(dir + "/", dir + "0").keySet());
+    }
+
     /** Returns whether the index contains a file with the name fileName. */
     public boolean contains(String fileName) {
         return files.containsKey(fileName);
@@ -42,7 +209,8 @@ public class Index implements Dumpable {
     public void addFile(String fileName, String hash) {
         if (contains(fileName)) {
             String[] versions = files.get(fileName);
-            versions[1] = versions[0];
+            versions[0] = hash;
+            versions[1] = hash;
         } else {
             files.put(fileName, new String[] {hash, hash, ""});
         }
@@ -71,6 +239,72 @@ public class Index implements Dumpable {
         } else {
             files.get(fileName)[0] = hash;
         }
+        stats.remove(fileName);
+    }
+
+    /** Update the version of a tracked file in the working directory along
+     * with the stat information it was hashed under.
+     *
+     * @param fileName Name of the file to add.
+     * @param hash Hash of the file contents.
+     * @param stat Stat information of the file, as returned by Utils.statFile.
+     */
+    public void updateFile(String fileName, String hash, long[] stat) {
+        updateFile(fileName, hash);
+        if (contains(fileName)) {
+            stats.put(fileName, stat);
+        }
+    }
+
+    /** Returns whether the recorded working version of fileName can be trusted
+     * without re-hashing the file, given its current stat information. An
+     * entry modified at or after the previous scan began is racily clean: a
+     * later change within the same clock tick would leave its stat unchanged,
+     * so it is always re-hashed. */
+    public boolean isStatClean(String fileName, long[] stat) {
+        long[] recorded = stats.get(fileName);
+        return recorded != null && Arrays.equals(recorded, stat)
+                && stat[1] / 1_000_000 < timestamp;
+    }
+
+    /** Records that a scan of the working directory began at TIME, in
+     * milliseconds. */
+    public void setTimestamp(long time) {
+        timestamp = time;
+    }
+
+    /** Returns the token of the fsmonitor this index is kept up to date
+     * with, or an empty string if none. */
+    String monitorToken() {
+        return monitorToken;
+    }
+
+    /** Returns the offset in the fsmonitor log up to which its changes have
+     * been applied to this index. */
+    long monitorOffset() {
+        return monitorOffset;
+    }
+
+    /** Records that the changes logged by the fsmonitor with token TOKEN,
+     * up to OFFSET in its log, have been applied to this index. */
+    void setMonitor(String token, long offset) {
+        monitorToken = token;
+        monitorOffset = offset;
+    }
+
+    /** Adds fileName to the index as checked out from the last commit, with
+     * version hash in the working directory, the staging area and the
+     * commit, and stat information stat. */
+    void addCheckedOut(String fileName, String hash, long[] stat) {
+        files.put(fileName, new String[] {hash, hash, hash});
+        stats.put(fileName, stat);
+    }
+
+    /** Drops fileName from the index altogether, as for a file that is not
+     * checked out. */
+    void forget(String fileName) {
+        files.remove(fileName);
+        stats.remove(fileName);
     }
 
     public void rmFile(String fileName) {
@@ -148,6 +382,83 @@ public class Index implements Dumpable {
         return untracked;
     }
 
+    /** Returns the hash of the working version of fileName, or an empty
+     * string if it is not in the working directory. */
+    String getWorkingVersion(String fileName) {
+        return contains(fileName) ? files.get(fileName)[0] : "";
+    }
+
+    /** Returns the hash of the staged version of fileName, or an empty string
+     * if it has none. */
+    String getStagedVersion(String fileName) {
+        return contains(fileName) ? files.get(fileName)[1] : "";
+    }
+
+    /** Returns the hashes of every staged and committed version in the
+     * index, which are all in the object store. */
+    Set<String> getStoredVersions() {
+        Set<String> stored = new HashSet<>();
+        for (String[] versions : files.values()) {
+            for (int v = 1; v < 3; v += 1) {
+                if (!versions[v].isEmpty()) {
+                    stored.add(versions[v]);
+                }
+            }
+        }
+        return stored;
+    }
+
+    /** Returns a map of files in the last commit whose working version differs
+     * from the committed one, with file names as keys and the committed
+     * versions as values. Used when checking out a commit. */
+    Map<String, String> getChangedSinceCommit() {
+        Map<String, String> changed = new TreeMap<>();
+        for (Map.Entry<String, String[]> entry : files.entrySet()) {
+            String[] versions = entry.getValue();
+            if (!versions[2].isEmpty() && !versions[0].equals(versions[2])) {
+                changed.put(entry.getKey(), versions[2]);
+            }
+        }
+        return changed;
+    }
+
+    /** Records that a commit differing from the last commit by CHANGES has
+     * been checked out. CHANGES maps file names to their versions in the new
+     * commit, or to empty strings for files it does not have, and those
+     * versions are taken to be in the working directory. Every staged change
+     * is dropped. */
+    void checkout(Map<String, String> changes) {
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String[] versions = files.computeIfAbsent(change.getKey(), k -> new String[] {"", "", ""});
+            versions[0] = change.getValue();
+            versions[2] = change.getValue();
+            stats.remove(change.getKey());
+        }
+        Iterator<Map.Entry<String, String[]>> entries = files.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, String[]> entry = entries.next();
+            String[] versions = entry.getValue();
+            versions[1] = versions[2];
+            if (versions[0].isEmpty() && versions[2].isEmpty()) {
+                entries.remove();
+                stats.remove(entry.getKey());
+            }
+        }
+    }
+
+    /** Returns a map of untracked files that are renames of tracked files
+     *  deleted from the working directory, with the untracked file names as
+     *  keys and the names of the deleted files as values. */
+    public Map<String, String> getRenames() {
+        Map<String, String> deleted = new TreeMap<>();
+        for (Map.Entry<String, String> change : getUnstagedChanges().entrySet()) {
+            if (change.getValue().isEmpty()) {
+                deleted.put(change.getKey(), files.get(change.getKey())[1]);
+            }
+        }
+        return RenameDetector.detect(deleted, getUntrackedFiles());
+    }
+
     /** Returns whether fileName is tracked (staged or committed) by the current repository. */
     public boolean isTracked(String fileName) {
         return contains(fileName) && (!files.get(fileName)[1].isEmpty() || !files.get(fileName)[2].isEmpty());
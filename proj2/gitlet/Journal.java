@@ -0,0 +1,449 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/** A write-ahead journal that makes the updates to the refs, HEAD, index
+ * and config of each command atomic, and durable with a single fsync.
+ *
+ * Each command runs as a transaction. Writes to those files are held in
+ * memory, where later reads of the same command see them, and the objects
+ * the command stores are noted. When the command succeeds, its writes are
+ * appended to .gitlet/journal as one record:
+ *     {"GJRN", length of entries, CRC-32 of entries, entries}
+ * where each entry is {kind, path relative to .gitlet (short length and
+ * UTF-8), length, contents}, with kind FILE for a file and OBJECT for the
+ * stored form of a new loose object. Objects larger than INLINE_LIMIT are
+ * fsynced on their own instead, and object stores that do not keep loose
+ * objects, such as a HashedObjectStore, are synced before the record is
+ * written. The journal is then fsynced and each file is
+ * replaced by renaming a temporary file over it. If the command fails, its
+ * writes are dropped, so a failed command changes none of these files.
+ *
+ * The offset of the end of the last record applied is kept, without fsync,
+ * in .gitlet/journal-applied, along with an id of the current boot of the
+ * system. A process first replays the complete records after that offset,
+ * which were made durable by a process that stopped before applying them.
+ * After a restart of the system, the renames that applied records may have
+ * been lost too, so every record is replayed; replaying a record twice does
+ * no harm. An object is written again unless its loose file holds exactly
+ * the stored form in the record, since the file may have been cut short. A
+ * record cut short or failing its CRC ends the journal. Once the journal is
+ * larger than CHECKPOINT_SIZE, the files it names are fsynced and it is
+ * emptied.
+ *
+ * With group commit, as in the daemon, records are written to the journal
+ * as commands finish, but fsynced and applied in batches by sync, so one
+ * fsync covers many commands. Until then, their writes are read from memory.
+ * A crash of the system can lose the last batch, but never part of a
+ * command.
+ *
+ * @author Eve Stroud
+ */
+class Journal {
+
+    /** The journal of the current repository. */
+    static final File JOURNAL = join(Repository.GITLET_DIR, "journal");
+    /** Holds the offset in the journal up to which records were applied. */
+    static final File APPLIED = join(Repository.GITLET_DIR, "journal-applied");
+
+    /** Magic number at the start of each record. */
+    private static final int MAGIC = 0x474a524e;
+    /** Size of the header of each record. */
+    private static final int HEADER = 12;
+    /** Kind of an entry holding the contents of a file. */
+    private static final int FILE = 0;
+    /** Kind of an entry holding the stored form of an object. */
+    private static final int OBJECT = 1;
+    /** Largest object whose stored form is written to the journal. */
+    static final int INLINE_LIMIT = 1 << 16;
+    /** Size of the journal above which it is emptied. */
+    static final long CHECKPOINT_SIZE = 1 << 20;
+
+    /** Whether a transaction is running. */
+    private static boolean active;
+    /** Writes of the running transaction, by file. */
+    private static final Map<File, byte[]> transaction = new LinkedHashMap<>();
+    /** Loose object files stored by the running transaction, which may
+     *  store them from several threads at once. */
+    private static final Queue<File> objects = new ConcurrentLinkedQueue<>();
+    /** Object stores changed since the last record was written. They are
+     *  kept when a transaction is aborted, since the objects it added stay
+     *  in them and later transactions may use them. */
+    private static final Set<ObjectStore> stores = ConcurrentHashMap.newKeySet();
+    /** Writes in records not yet fsynced and applied, by file. */
+    private static final Map<File, byte[]> unsynced = new LinkedHashMap<>();
+    /** Number of records not yet fsynced and applied. */
+    private static int unsyncedRecords;
+    /** Whether records are fsynced in batches by sync. */
+    private static boolean groupCommit;
+    /** Whether this process has replayed the journal. */
+    private static boolean recovered;
+
+    /** Makes commit leave records to be fsynced in batches by sync if
+     *  ENABLED, rather than fsyncing each one. */
+    static void setGroupCommit(boolean enabled) {
+        groupCommit = enabled;
+    }
+
+    /** Starts a transaction. */
+    static void begin() {
+        abort();
+        active = true;
+    }
+
+    /** Drops the writes of the running transaction, if any. */
+    static void abort() {
+        active = false;
+        transaction.clear();
+        objects.clear();
+    }
+
+    /** Replaces the contents of FILE with CONTENTS, as part of the running
+     *  transaction if there is one. */
+    static void write(File file, byte[] contents) {
+        if (active) {
+            transaction.put(file, contents);
+        } else {
+            replace(file, contents);
+        }
+    }
+
+    /** Replaces the contents of FILE with CONTENTS that only cache what can
+     *  be worked out again, so they need not be durable. */
+    static void refresh(File file, byte[] contents) {
+        if (transaction.containsKey(file)) {
+            transaction.put(file, contents);
+        } else if (unsynced.containsKey(file)) {
+            unsynced.put(file, contents);
+        } else {
+            replace(file, contents);
+        }
+    }
+
+    /** Notes that the running transaction, if any, stored the loose object
+     *  file OBJECT. */
+    static void objectStored(File object) {
+        if (active) {
+            objects.add(object);
+        }
+    }
+
+    /** Notes that objects were added to STORE or deleted from it, so that it
+     *  is synced before the next record is written, or syncs it now if no
+     *  transaction is running. */
+    static void storeChanged(ObjectStore store) {
+        if (active) {
+            stores.add(store);
+        } else {
+            store.sync();
+        }
+    }
+
+    /** Returns the contents of FILE, including writes not applied yet. */
+    static byte[] read(File file) {
+        byte[] contents = transaction.get(file);
+        if (contents == null) {
+            contents = unsynced.get(file);
+        }
+        return contents == null ? readContents(file) : contents;
+    }
+
+    /** Returns the contents of FILE as a string, including writes not
+     *  applied yet. */
+    static String readString(File file) {
+        return new String(read(file), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the contents of FILE written but not yet applied, or null if
+     *  there are none. */
+    static byte[] pending(File file) {
+        byte[] contents = transaction.get(file);
+        return contents == null ? unsynced.get(file) : contents;
+    }
+
+    /** Returns whether FILE exists, including writes not applied yet. */
+    static boolean exists(File file) {
+        return pending(file) != null || file.isFile();
+    }
+
+    /** Returns the names of the plain files in DIR, including writes not
+     *  applied yet, in lexicographic order. */
+    static List<String> filesIn(File dir) {
+        Set<String> names = new TreeSet<>(plainFilenamesIn(dir));
+        for (Map<File, byte[]> writes : List.of(unsynced, transaction)) {
+            for (File file : writes.keySet()) {
+                if (file.getParentFile().equals(dir)) {
+                    names.add(file.getName());
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Ends the running transaction, appending its writes to the journal as
+     *  one record and, unless group commit is on, fsyncing and applying
+     *  them. */
+    static void commit() {
+        active = false;
+        for (ObjectStore store : stores) {
+            store.sync();
+        }
+        stores.clear();
+        if (transaction.isEmpty() && objects.isEmpty()) {
+            return;
+        }
+        try {
+            byte[] entries = encodeEntries();
+            CRC32 crc = new CRC32();
+            crc.update(entries);
+            ByteBuffer record = ByteBuffer.allocate(HEADER + entries.length);
+            record.putInt(MAGIC).putInt(entries.length).putInt((int) crc.getValue()).put(entries);
+            record.flip();
+            try (FileChannel channel = FileChannel.open(JOURNAL.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        unsynced.putAll(transaction);
+        unsyncedRecords += 1;
+        abort();
+        if (!groupCommit) {
+            sync();
+        }
+    }
+
+    /** Returns the number of records written but not yet fsynced and
+     *  applied. */
+    static int unsyncedRecords() {
+        return unsyncedRecords;
+    }
+
+    /** Fsyncs the journal and applies the records not applied yet. */
+    static void sync() {
+        if (unsyncedRecords == 0) {
+            return;
+        }
+        force(JOURNAL.toPath());
+        for (Map.Entry<File, byte[]> write : unsynced.entrySet()) {
+            replace(write.getKey(), write.getValue());
+        }
+        unsynced.clear();
+        unsyncedRecords = 0;
+        long end = JOURNAL.length();
+        if (end > CHECKPOINT_SIZE) {
+            checkpoint();
+        } else {
+            markApplied(end);
+        }
+    }
+
+    /** Replays the records of the journal not yet applied, once per process,
+     *  and drops any incomplete record at its end. */
+    static void recover() {
+        if (recovered || !JOURNAL.isFile()) {
+            recovered = true;
+            return;
+        }
+        recovered = true;
+        ByteBuffer journal = ByteBuffer.wrap(readContents(JOURNAL));
+        long applied = 0;
+        if (APPLIED.isFile()) {
+            String[] fields = readContentsAsString(APPLIED).trim().split(" ");
+            if (fields.length == 2 && fields[0].equals(bootId()) && fields[1].matches("\\d{1,18}")) {
+                applied = Long.parseLong(fields[1]);
+            }
+        }
+        if (applied > journal.capacity()) {
+            applied = 0;
+        }
+        journal.position((int) applied);
+        while (journal.remaining() >= HEADER) {
+            int start = journal.position();
+            int length = journal.getInt(start + 4);
+            if (journal.getInt(start) != MAGIC || length < 0
+                || journal.remaining() - HEADER < length) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(journal.array(), start + HEADER, length);
+            if ((int) crc.getValue() != journal.getInt(start + 8)) {
+                break;
+            }
+            journal.position(start + HEADER);
+            replay(journal.slice().limit(length));
+            journal.position(start + HEADER + length);
+        }
+        if (journal.hasRemaining()) {
+            try (FileChannel channel = FileChannel.open(JOURNAL.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(journal.position());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        if (journal.position() != applied) {
+            markApplied(journal.position());
+        }
+    }
+
+    /** Applies the entries of one record in ENTRIES. */
+    private static void replay(ByteBuffer entries) {
+        while (entries.hasRemaining()) {
+            int kind = entries.get();
+            byte[] path = new byte[entries.getShort() & 0xffff];
+            entries.get(path);
+            byte[] contents = new byte[entries.getInt()];
+            entries.get(contents);
+            File file = Repository.GITLET_DIR.toPath()
+                    .resolve(new String(path, StandardCharsets.UTF_8)).toFile();
+            if (kind == FILE || !hasContents(file, contents)) {
+                replace(file, contents);
+            }
+        }
+    }
+
+    /** Returns whether FILE exists and holds exactly CONTENTS. A loose
+     *  object renamed into place without fsync can survive a crash of the
+     *  system cut short or empty. */
+    private static boolean hasContents(File file, byte[] contents) {
+        return file.isFile() && file.length() == contents.length
+            && Arrays.equals(readContents(file), contents);
+    }
+
+    /** Returns the entries of the record of the running transaction,
+     *  fsyncing the objects too large to be written in it. */
+    private static byte[] encodeEntries() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Set<Path> directories = new HashSet<>();
+        for (File object : objects) {
+            if (object.length() <= INLINE_LIMIT) {
+                writeEntry(out, OBJECT, object, readContents(object));
+            } else {
+                force(object.toPath());
+                directories.add(object.getParentFile().toPath());
+            }
+        }
+        for (Path directory : directories) {
+            force(directory);
+        }
+        for (Map.Entry<File, byte[]> write : transaction.entrySet()) {
+            writeEntry(out, FILE, write.getKey(), write.getValue());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Writes an entry of kind KIND for FILE with contents CONTENTS to
+     *  OUT. */
+    private static void writeEntry(DataOutputStream out, int kind, File file, byte[] contents)
+            throws IOException {
+        byte[] path = Repository.GITLET_DIR.toPath().relativize(file.toPath()).toString()
+                .getBytes(StandardCharsets.UTF_8);
+        out.writeByte(kind);
+        out.writeShort(path.length);
+        out.write(path);
+        out.writeInt(contents.length);
+        out.write(contents);
+    }
+
+    /** Fsyncs the files named in the journal and the directories holding
+     *  them, then empties the journal. */
+    private static void checkpoint() {
+        ByteBuffer journal = ByteBuffer.wrap(readContents(JOURNAL));
+        Set<Path> paths = new HashSet<>();
+        while (journal.remaining() >= HEADER) {
+            int length = journal.getInt(journal.position() + 4);
+            ByteBuffer entries = journal.position(journal.position() + HEADER).slice().limit(length);
+            while (entries.hasRemaining()) {
+                entries.get();
+                byte[] path = new byte[entries.getShort() & 0xffff];
+                entries.get(path);
+                int size = entries.getInt();
+                entries.position(entries.position() + size);
+                Path file = Repository.GITLET_DIR.toPath().resolve(new String(path, StandardCharsets.UTF_8));
+                paths.add(file);
+                paths.add(file.getParent());
+            }
+            journal.position(journal.position() + length);
+        }
+        for (Path path : paths) {
+            if (Files.exists(path)) {
+                force(path);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(JOURNAL.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        markApplied(0);
+    }
+
+    /** Records that the journal was applied up to OFFSET. */
+    private static void markApplied(long offset) {
+        writeContents(APPLIED, bootId() + " " + offset);
+    }
+
+    /** Returns an id of the current boot of the system, or "-" if it is not
+     *  known. */
+    private static String bootId() {
+        File id = new File("/proc/sys/kernel/random/boot_id");
+        return id.isFile() ? readContentsAsString(id).trim() : "-";
+    }
+
+    /** Replaces the contents of FILE with CONTENTS by renaming a temporary
+     *  file over it, without fsync. */
+    private static void replace(File file, byte[] contents) {
+        File tmp = null;
+        try {
+            file.getParentFile().mkdirs();
+            tmp = File.createTempFile("journal", ".tmp", Repository.GITLET_DIR);
+            Files.write(tmp.toPath(), contents);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Fsyncs the file or directory at PATH. */
+    private static void force(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package gitlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+import static org.junit.Assert.*;
+
+/** Tests recovery of the journal after a crash.
+ *
+ *  Each test runs gitlet in a repository of its own, in a child JVM, then
+ *  leaves the journal and the files it names as a crash would: with a
+ *  record cut short or failing its CRC, with records the applied marker
+ *  does or does not cover, or with a loose object cut short. It then runs
+ *  gitlet again and checks that recovery replayed or discarded each record.
+ *
+ *  @author Eve Stroud
+ */
+public class JournalTest {
+
+    /** Class path of the child JVMs that run gitlet. */
+    private static final String CLASS_PATH = System.getProperty("java.class.path");
+    /** Magic number at the start of each record. */
+    private static final int MAGIC = 0x474a524e;
+    /** Kind of an entry holding the contents of a file. */
+    private static final int FILE = 0;
+
+    /** Working directory of the repository under test. */
+    private File dir;
+    /** Its journal. */
+    private File journal;
+    /** Its applied marker. */
+    private File applied;
+    /** The hash of its head commit. */
+    private String head;
+
+    /** Creates a repository with one commit holding wug.txt. */
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("gitlet-journal").toFile();
+        journal = join(dir, ".gitlet", "journal");
+        applied = join(dir, ".gitlet", "journal-applied");
+        gitlet("init");
+        writeContents(join(dir, "wug.txt"), "This is a wug.\n");
+        gitlet("add", "wug.txt");
+        gitlet("commit", "added wug");
+        head = readContentsAsString(join(dir, ".gitlet", "refs", "master"));
+    }
+
+    /** Deletes the repository. */
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    /** A complete record left unapplied is replayed, and the record after it,
+     *  cut short, is dropped from the journal. */
+    @Test
+    public void partialRecordIsDiscarded() throws IOException {
+        long start = journal.length();
+        byte[] complete = record("refs/side", head);
+        byte[] partial = record("refs/other", head);
+        append(complete, Arrays.copyOf(partial, partial.length - 5));
+        String status = gitlet("status");
+        assertTrue(status.contains("\nside\n"));
+        assertFalse(status.contains("other"));
+        assertEquals(start + complete.length, journal.length());
+
+        gitlet("branch", "other");
+        assertTrue(gitlet("status").contains("\nother\n"));
+    }
+
+    /** A record failing its CRC ends the journal, so neither it nor the
+     *  complete record after it is replayed. */
+    @Test
+    public void corruptRecordEndsJournal() throws IOException {
+        long start = journal.length();
+        byte[] corrupt = record("refs/side", head);
+        corrupt[corrupt.length - 1] ^= 1;
+        append(corrupt, record("refs/other", head));
+        String status = gitlet("status");
+        assertFalse(status.contains("side"));
+        assertFalse(status.contains("other"));
+        assertEquals(start, journal.length());
+    }
+
+    /** Records the applied marker of the current boot covers are not
+     *  replayed again. */
+    @Test
+    public void appliedRecordsAreSkipped() {
+        gitlet("branch", "side");
+        assertTrue(join(dir, ".gitlet", "refs", "side").delete());
+        assertFalse(gitlet("status").contains("side"));
+    }
+
+    /** After a restart of the system, when the renames of applied records may
+     *  have been lost, every record is replayed. */
+    @Test
+    public void markerOfAnotherBootReplaysAll() {
+        gitlet("branch", "side");
+        assertTrue(join(dir, ".gitlet", "refs", "side").delete());
+        writeContents(applied, "another-boot " + journal.length());
+        assertTrue(gitlet("status").contains("\nside\n"));
+    }
+
+    /** A loose object that a crash of the system left cut short is written
+     *  again from its record. */
+    @Test
+    public void damagedObjectIsRewritten() throws IOException {
+        Set<File> before = looseObjects();
+        writeContents(join(dir, "wug.txt"), "This is not a wug.\n");
+        gitlet("add", "wug.txt");
+        Set<File> added = looseObjects();
+        added.removeAll(before);
+        assertEquals(1, added.size());
+        File blob = added.iterator().next();
+        byte[] stored = readContents(blob);
+        writeContents(blob, Arrays.copyOf(stored, stored.length / 2));
+        writeContents(applied, "another-boot " + journal.length());
+
+        gitlet("status");
+        assertArrayEquals(stored, readContents(blob));
+        gitlet("commit", "changed wug");
+        writeContents(join(dir, "wug.txt"), "");
+        gitlet("checkout", "--", "wug.txt");
+        assertEquals("This is not a wug.\n", readContentsAsString(join(dir, "wug.txt")));
+    }
+
+    /** Once the journal grows past CHECKPOINT_SIZE it is emptied, and the
+     *  records written after that are recovered from its start. */
+    @Test
+    public void checkpointEmptiesJournal() throws IOException {
+        Random random = new Random(20);
+        int count = (int) (Journal.CHECKPOINT_SIZE / (Journal.INLINE_LIMIT / 2)) + 1;
+        String[] args = new String[count + 1];
+        args[0] = "add";
+        for (int i = 0; i < count; i += 1) {
+            byte[] contents = new byte[Journal.INLINE_LIMIT / 2];
+            random.nextBytes(contents);
+            args[i + 1] = "random" + i + ".bin";
+            writeContents(join(dir, args[i + 1]), contents);
+        }
+        gitlet(args);
+        assertEquals(0, journal.length());
+        assertTrue(readContentsAsString(applied).endsWith(" 0"));
+
+        append(record("refs/side", head));
+        assertTrue(gitlet("status").contains("\nside\n"));
+    }
+
+    /** Runs gitlet with ARGS in the repository and returns what it printed. */
+    private String gitlet(String... args) {
+        String[] command = new String[args.length + 4];
+        command[0] = join(System.getProperty("java.home"), "bin", "java").getPath();
+        command[1] = "-cp";
+        command[2] = CLASS_PATH;
+        command[3] = "gitlet.Main";
+        System.arraycopy(args, 0, command, 4, args.length);
+        try {
+            Process process = new ProcessBuilder(command).directory(dir)
+                    .redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(),
+                                       StandardCharsets.UTF_8);
+            assertEquals(output, 0, process.waitFor());
+            assertFalse(output, output.contains("Exception"));
+            return output;
+        } catch (IOException | InterruptedException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /** Returns a complete journal record that writes CONTENTS to the file at
+     *  PATH, relative to .gitlet. */
+    private static byte[] record(String path, String contents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(FILE);
+        out.writeShort(name.length);
+        out.write(name);
+        out.writeInt(data.length);
+        out.write(data);
+        byte[] entries = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(entries);
+        return ByteBuffer.allocate(12 + entries.length).putInt(MAGIC).putInt(entries.length)
+                .putInt((int) crc.getValue()).put(entries).array();
+    }
+
+    /** Appends RECORDS to the journal, as a process that stopped before
+     *  applying them would leave it. */
+    private void append(byte[]... records) throws IOException {
+        for (byte[] record : records) {
+            Files.write(journal.toPath(), record, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        }
+    }
+
+    /** Returns the loose object files of the repository. */
+    private Set<File> looseObjects() {
+        Set<File> objects = new HashSet<>();
+        File[] dirs = join(dir, ".gitlet", "objects").listFiles();
+        for (File sub : dirs == null ? new File[0] : dirs) {
+            File[] files = sub.getName().length() == 2 ? sub.listFiles() : null;
+            objects.addAll(Arrays.asList(files == null ? new File[0] : files));
+        }
+        return objects;
+    }
+
+    /** Deletes FILE and, if it is a directory, everything in it. */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+}
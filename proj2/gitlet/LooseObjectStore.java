@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** An ObjectStore keeping each object in a file of its own, a loose object,
+ * named by its hash. Loose objects are fanned out into LEVELS levels of
+ * directories, each named by the next two hex digits of the hash, and the
+ * file is named by the rest of the hash. With one level, as in git, each
+ * directory holds 1/256 of the objects, some 40,000 at ten million objects,
+ * where looking a name up in a directory starts to slow down; with two
+ * levels, each holds some 150.
+ *
+ * New loose objects are noted with the journal, which makes them durable
+ * with the record of the command that stored them.
+ *
+ * @author Eve Stroud
+ */
+class LooseObjectStore implements ObjectStore {
+
+    /** The directory holding the loose objects. */
+    private final File dir;
+    /** Number of levels of directories. */
+    private final int levels;
+
+    /** A store of loose objects in DIR, under LEVELS levels of
+     *  directories. */
+    LooseObjectStore(File dir, int levels) {
+        this.dir = dir;
+        this.levels = levels;
+    }
+
+    /** Returns the loose file of the object with hash HASH. */
+    File fileOf(String hash) {
+        String[] names = new String[levels + 1];
+        for (int i = 0; i < levels; i += 1) {
+            names[i] = hash.substring(2 * i, 2 * i + 2);
+        }
+        names[levels] = hash.substring(2 * levels);
+        return join(dir, names);
+    }
+
+    @Override
+    public boolean contains(String hash) {
+        return fileOf(hash).isFile();
+    }
+
+    @Override
+    public InputStream open(String hash) throws IOException {
+        try {
+            return new BufferedInputStream(Files.newInputStream(fileOf(hash).toPath()),
+                                           BUFFER_SIZE);
+        } catch (NoSuchFileException excp) {
+            return null;
+        }
+    }
+
+    @Override
+    public long storedSize(String hash) {
+        File file = fileOf(hash);
+        return file.isFile() ? file.length() : -1;
+    }
+
+    @Override
+    public void write(String hash, byte[] stored) {
+        File tmp = null;
+        try {
+            dir.mkdirs();
+            tmp = File.createTempFile("obj", ".tmp", dir);
+            Files.write(tmp.toPath(), stored);
+            store(hash, tmp);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames TMP to the loose file for HASH, or deletes TMP if that object
+     *  is already stored. */
+    @Override
+    public void store(String hash, File tmp) throws IOException {
+        File object = fileOf(hash);
+        if (object.isFile()) {
+            tmp.delete();
+        } else {
+            object.getParentFile().mkdirs();
+            Files.move(tmp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Journal.objectStored(object);
+        }
+    }
+
+    @Override
+    public Set<String> hashes() {
+        Set<String> hashes = new TreeSet<>();
+        addHashes(dir, "", 0, hashes);
+        return hashes;
+    }
+
+    /** Adds to HASHES the hashes of the loose objects under DIRECTORY, the
+     *  directory at level LEVEL named by the hex digits PREFIX. */
+    private void addHashes(File directory, String prefix, int level, Set<String> hashes) {
+        if (level == levels) {
+            for (String rest : plainFilenamesIn(directory)) {
+                if (prefix.length() + rest.length() == UID_LENGTH) {
+                    hashes.add(prefix + rest);
+                }
+            }
+            return;
+        }
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (name.length() == 2) {
+                addHashes(join(directory, name), prefix + name, level + 1, hashes);
+            }
+        }
+    }
+
+    /** Deletes the loose file of the object with hash HASH, along with the
+     *  directories left empty. */
+    @Override
+    public void delete(String hash) {
+        File file = fileOf(hash);
+        if (!file.delete()) {
+            return;
+        }
+        for (File parent = file.getParentFile(); !parent.equals(dir);
+             parent = parent.getParentFile()) {
+            String[] remaining = parent.list();
+            if (remaining == null || remaining.length > 0 || !parent.delete()) {
+                break;
+            }
+        }
+    }
+
+    /** Does nothing, as new loose objects are made durable by the
+     *  journal. */
+    @Override
+    public void sync() {
+    }
+}
@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.io.File;
+import java.util.Arrays;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author TODO
  */
@@ -9,18 +12,63 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            Utils.message(excp.getMessage());
+        }
+    }
+
+    /** Runs the command in ARGS, printing its output on System.out. Throws a
+     *  GitletException whose message is the error to print if the command
+     *  fails. */
+    static void run(String[] args) {
         if (args.length == 0) {
-            Utils.message("Please enter a command.");
-            System.exit(0);
+            throw Utils.error("Please enter a command.");
+        }
+
+        String command = args[0];
+        boolean creates = command.equals("init") || command.equals("clone");
+        if (!creates && !Repository.GITLET_DIR.exists()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        } else if (!creates) {
+            Journal.recover();
+        }
+
+        /* The daemon and the fsmonitor run until stopped, and the daemon runs
+         * each command it serves as a transaction of its own */
+        if (command.equals("daemon")) {
+            validateNumArgs(args, 1, 1);
+            Daemon.serve();
+            return;
+        } else if (command.equals("fsmonitor")) {
+            validateNumArgs(args, 1, 1);
+            FsMonitor.watch();
+            return;
+        }
+
+        /* Each command updates the repository as one journal transaction */
+        Journal.begin();
+        try {
+            runCommand(args);
+            Journal.commit();
+        } catch (RuntimeException excp) {
+            Journal.abort();
+            throw excp;
         }
+    }
 
+    /** Runs the command in ARGS in an initialized repository, or initializes
+     *  one. */
+    private static void runCommand(String[] args) {
         String command = args[0];
         if (command.equals("init")) {
             validateNumArgs(args, 1, 1);
             Repository.init();
             return;
-        } else if (!Repository.GITLET_DIR.exists()) {
-            Utils.message("Not in an initialized Gitlet directory.");
+        } else if (command.equals("clone")) {
+            validateNumArgs(args, 3, 3);
+            Repository.cloneShallow(new File(args[1]).getAbsoluteFile(), parseDepth(args[2]));
             return;
         }
 
@@ -28,13 +76,10 @@ public class Main {
         Repository.updateIndex();
 
         switch (command) {
-            case "add": {
-                // TODO handle invalid files (including '.' ?)
-                validateNumArgs(args, 2, 2);
-                String fileName = args[1];
-                Repository.add(fileName);
+            case "add":
+                validateNumArgs(args, 2, Integer.MAX_VALUE);
+                Repository.add(Arrays.copyOfRange(args, 1, args.length));
                 break;
-            }
             case "commit":
                 validateNumArgs(args, 1, 2);
                 if (args.length == 1) {
@@ -56,33 +101,92 @@ public class Main {
                 break;
             case "global-log":
                 validateNumArgs(args, 1, 1);
+                Repository.globalLog();
                 break;
             case "find":
-                validateNumArgs(args, 1, 1);
+                if (args.length == 3 && args[1].equals("--contains")) {
+                    Repository.find(args[2], false);
+                } else {
+                    validateNumArgs(args, 2, 2);
+                    Repository.find(args[1], true);
+                }
                 break;
             case "status":
                 validateNumArgs(args, 1, 1);
                 Repository.status();
                 break;
             case "checkout":
+                if (args.length == 3 && args[1].equals("--")) {
+                    Repository.checkoutFile(null, args[2]);
+                } else if (args.length == 4 && args[2].equals("--")) {
+                    Repository.checkoutFile(args[1], args[3]);
+                } else if (args.length == 2) {
+                    Repository.checkoutBranch(args[1]);
+                } else {
+                    throw Utils.error("Incorrect operands.");
+                }
                 break;
             case "branch":
+                validateNumArgs(args, 2, 2);
+                Repository.newBranch(args[1], Repository.headCommit());
                 break;
             case "rm-branch":
                 break;
             case "reset":
+                validateNumArgs(args, 2, 2);
+                Repository.reset(args[1]);
                 break;
             case "merge":
                 break;
+            case "config":
+                validateNumArgs(args, 2, 3);
+                Repository.config(args[1], args.length == 3 ? args[2] : null);
+                break;
+            case "diff":
+                Repository.diff(Arrays.copyOfRange(args, 1, args.length));
+                break;
+            case "debug":
+                validateNumArgs(args, 2, 2);
+                Repository.debug(args[1]);
+                break;
+            case "pack":
+                validateNumArgs(args, 1, 1);
+                Repository.pack();
+                break;
+            case "gc":
+                validateNumArgs(args, 1, 1);
+                Repository.gc();
+                break;
+            case "shallow":
+                validateNumArgs(args, 2, 2);
+                Repository.shallow(parseDepth(args[1]));
+                break;
+            case "sparse":
+                if (args.length == 1) {
+                    Repository.sparse((String[]) null);
+                } else if (args.length == 2 && args[1].equals("--disable")) {
+                    Repository.sparse();
+                } else {
+                    Repository.sparse(Arrays.copyOfRange(args, 1, args.length));
+                }
+                break;
             default:
                 System.out.println("No command with that name exists.");
         }
     }
 
+    /** Returns the history depth given by the operand ARG, which must be a
+     *  positive number. */
+    private static int parseDepth(String arg) {
+        if (!arg.matches("[1-9][0-9]{0,8}")) {
+            throw Utils.error("Incorrect operands.");
+        }
+        return Integer.parseInt(arg);
+    }
+
     public static void validateNumArgs(String[] args, int min, int max) {
         if (args.length < min || args.length > max) {
-            Utils.message("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
 }
@@ -0,0 +1,415 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** An inverted index of the commit messages in a commit graph, used by find.
+ *
+ * The tokens of a message are its trigrams, the runs of three consecutive
+ * bytes of its UTF-8 form, and the index maps each trigram to the positions
+ * in the graph of the commits whose messages contain it. The commits whose
+ * messages contain a text, or are equal to it, are among those in the
+ * postings of every trigram of the text; those are intersected, rarest
+ * first, until few enough candidates are left that checking each of them
+ * against its message is cheaper than reading more postings. Texts
+ * shorter than three bytes have no trigrams, so every message is checked.
+ *
+ * The index is stored in two files:
+ *     base: "GFND", version, number of commits covered, hash of the last
+ *           commit covered, number of trigrams, then for each trigram in
+ *           increasing order {trigram, number of postings, offset of
+ *           postings}, then the postings
+ *     log: {position, number of trigrams, trigrams} for each commit added
+ *          to the graph after those covered by the base
+ * The postings of a trigram are the differences between successive
+ * positions, each written in 7-bit groups, lowest first, with the top bit
+ * set on all but the last group.
+ *
+ * Commits added to the graph are appended to the log. Once the log holds
+ * more than a fraction of the commits in the base, the base is rewritten to
+ * cover the whole graph and the log is emptied. A base whose last commit is
+ * no longer at the same position of the graph is rewritten.
+ *
+ * @author Eve Stroud
+ */
+class MessageIndex {
+
+    /** Directory of the index of the current repository. */
+    static final File INDEX_DIR = join(Repository.GITLET_DIR, "find");
+
+    /** Magic number at the start of the base file. */
+    private static final int MAGIC = 0x47464e44;
+    /** Version of the index format. */
+    private static final int VERSION = 1;
+    /** Size of the base file header. */
+    private static final int HEADER = 16 + UID_LENGTH;
+    /** Size of each entry of the trigram table in the base file. */
+    private static final int ENTRY = 12;
+    /** Postings are no longer intersected once checking each candidate
+     *  message would be cheaper, taking one check to cost as much as
+     *  reading CHECK_COST postings. */
+    private static final int CHECK_COST = 32;
+    /** Number of commits the log may hold however small the base is. */
+    private static final int MIN_LOG = 1024;
+    /** The log may hold at most 1 / LOG_FRACTION as many commits as the
+     *  base. */
+    private static final int LOG_FRACTION = 8;
+
+    /** The base file. */
+    private final File baseFile;
+    /** The log file. */
+    private final File logFile;
+    /** Contents of the base file, or null if there is none. */
+    private ByteBuffer base;
+    /** Number of commits covered by the base. */
+    private int baseCount;
+    /** Number of trigrams in the base. */
+    private int trigrams;
+    /** Positions of the commits in the log containing each trigram, in
+     *  increasing order. */
+    private final Map<Integer, List<Integer>> logPostings = new HashMap<>();
+    /** Number of commits covered by the base and the log. */
+    private int count;
+
+    /** The index stored in DIR, which need not exist yet. */
+    MessageIndex(File dir) {
+        baseFile = join(dir, "base");
+        logFile = join(dir, "log");
+    }
+
+    /** Deletes the index of the current repository, for when positions in
+     *  the commit graph change. */
+    static void clear() {
+        File[] files = INDEX_DIR.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Returns the positions in GRAPH, in increasing order, of the commits
+     *  whose messages are equal to TEXT, or contain it if EXACT is false.
+     *  Commits not yet in the index are added first. */
+    int[] find(CommitGraph graph, String text, boolean exact) {
+        update(graph);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int[] grams = trigramsOf(bytes);
+        int[] candidates;
+        if (grams.length == 0) {
+            candidates = new int[graph.size()];
+            for (int i = 0; i < candidates.length; i += 1) {
+                candidates[i] = i;
+            }
+        } else {
+            Integer[] order = new Integer[grams.length];
+            for (int k = 0; k < grams.length; k += 1) {
+                order[k] = grams[k];
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(postingCount(a), postingCount(b)));
+            candidates = postings(order[0]);
+            for (int k = 1; k < order.length && candidates.length > 0; k += 1) {
+                if ((long) candidates.length * CHECK_COST < postingCount(order[k])) {
+                    break;
+                }
+                candidates = intersect(candidates, postings(order[k]));
+            }
+        }
+        int matches = 0;
+        for (int i : candidates) {
+            String message = graph.message(i);
+            if (exact ? message.equals(text) : message.contains(text)) {
+                candidates[matches] = i;
+                matches += 1;
+            }
+        }
+        return Arrays.copyOf(candidates, matches);
+    }
+
+    /** Adds the commits of GRAPH that are not in the index yet, appending
+     *  them to the log, or rewriting the base if the log would grow too
+     *  long. */
+    void update(CommitGraph graph) {
+        load(graph);
+        int logCount = graph.size() - baseCount;
+        if (logCount > Math.max(MIN_LOG, baseCount / LOG_FRACTION)) {
+            writeBase(graph);
+            load(graph);
+        } else if (count < graph.size()) {
+            appendLog(graph);
+        }
+    }
+
+    /** Reads the index, discarding a base that does not match GRAPH and
+     *  any part of the log that does not follow the base. */
+    private void load(CommitGraph graph) {
+        base = null;
+        baseCount = 0;
+        trigrams = 0;
+        logPostings.clear();
+        if (baseFile.isFile()) {
+            ByteBuffer stored = map(baseFile);
+            if (matches(stored, graph)) {
+                base = stored;
+                baseCount = base.getInt(8);
+                trigrams = base.getInt(12 + UID_LENGTH);
+            } else {
+                logFile.delete();
+            }
+        }
+        count = baseCount;
+        if (!logFile.isFile()) {
+            return;
+        }
+        ByteBuffer log = ByteBuffer.wrap(readContents(logFile));
+        while (log.remaining() >= 8) {
+            int start = log.position();
+            int position = log.getInt();
+            int n = log.getInt();
+            if (position != count || position >= graph.size() || n < 0 || log.remaining() < 4 * n) {
+                log.position(start);
+                break;
+            }
+            for (int k = 0; k < n; k += 1) {
+                logPostings.computeIfAbsent(log.getInt(), gram -> new ArrayList<>()).add(position);
+            }
+            count += 1;
+        }
+        if (log.hasRemaining()) {
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(log.position());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns whether STORED is a base file covering a prefix of GRAPH. */
+    private static boolean matches(ByteBuffer stored, CommitGraph graph) {
+        if (stored.capacity() < HEADER || stored.getInt(0) != MAGIC
+            || stored.getInt(4) != VERSION) {
+            return false;
+        }
+        int covered = stored.getInt(8);
+        byte[] last = new byte[UID_LENGTH];
+        stored.get(12, last);
+        return covered == 0 || (covered <= graph.size()
+            && graph.hash(covered - 1).equals(new String(last, StandardCharsets.US_ASCII)));
+    }
+
+    /** Appends the commits of GRAPH that are not in the index yet to the
+     *  log. */
+    private void appendLog(CommitGraph graph) {
+        logFile.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                 Files.newOutputStream(logFile.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.APPEND)))) {
+            for (; count < graph.size(); count += 1) {
+                int[] grams = trigramsOf(graph.messageBytes(count));
+                out.writeInt(count);
+                out.writeInt(grams.length);
+                for (int gram : grams) {
+                    out.writeInt(gram);
+                    logPostings.computeIfAbsent(gram, g -> new ArrayList<>()).add(count);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Replaces the base with one covering every commit of GRAPH, and
+     *  empties the log. */
+    private void writeBase(CommitGraph graph) {
+        TreeMap<Integer, Postings> postings = new TreeMap<>();
+        for (int i = 0; i < graph.size(); i += 1) {
+            for (int gram : trigramsOf(graph.messageBytes(i))) {
+                postings.computeIfAbsent(gram, g -> new Postings()).add(i);
+            }
+        }
+        baseFile.getParentFile().mkdirs();
+        File tmp = join(baseFile.getParentFile(), baseFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(graph.size());
+            String last = graph.size() == 0 ? "" : graph.hash(graph.size() - 1);
+            out.write(Arrays.copyOf(last.getBytes(StandardCharsets.US_ASCII), UID_LENGTH));
+            out.writeInt(postings.size());
+            int offset = HEADER + ENTRY * postings.size();
+            for (Map.Entry<Integer, Postings> entry : postings.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().count);
+                out.writeInt(offset);
+                offset += entry.getValue().size;
+            }
+            for (Postings list : postings.values()) {
+                out.write(list.bytes, 0, list.size);
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), baseFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        logFile.delete();
+    }
+
+    /** Returns the position of GRAM in the trigram table of the base, or -1
+     *  if it is not in it. */
+    private int entryOf(int gram) {
+        int lo = 0;
+        int hi = trigrams - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int key = base.getInt(HEADER + mid * ENTRY);
+            if (key < gram) {
+                lo = mid + 1;
+            } else if (key > gram) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the number of commits whose messages contain GRAM. */
+    private int postingCount(int gram) {
+        int entry = base == null ? -1 : entryOf(gram);
+        List<Integer> logged = logPostings.get(gram);
+        return (entry < 0 ? 0 : base.getInt(HEADER + entry * ENTRY + 4))
+            + (logged == null ? 0 : logged.size());
+    }
+
+    /** Returns the positions of the commits whose messages contain GRAM, in
+     *  increasing order. */
+    private int[] postings(int gram) {
+        int entry = base == null ? -1 : entryOf(gram);
+        List<Integer> logged = logPostings.getOrDefault(gram, List.of());
+        int n = entry < 0 ? 0 : base.getInt(HEADER + entry * ENTRY + 4);
+        int[] result = new int[n + logged.size()];
+        if (entry >= 0) {
+            int p = base.getInt(HEADER + entry * ENTRY + 8);
+            int position = -1;
+            for (int k = 0; k < n; k += 1) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = base.get(p);
+                    p += 1;
+                    gap |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                position += gap;
+                result[k] = position;
+            }
+        }
+        for (int k = 0; k < logged.size(); k += 1) {
+            result[n + k] = logged.get(k);
+        }
+        return result;
+    }
+
+    /** Returns the ints in both of the increasing arrays A and B. */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n] = a[i];
+                n += 1;
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Returns the distinct trigrams of TEXT, in increasing order. */
+    static int[] trigramsOf(byte[] text) {
+        if (text.length < 3) {
+            return new int[0];
+        }
+        int[] grams = new int[text.length - 2];
+        for (int k = 0; k < grams.length; k += 1) {
+            grams[k] = (text[k] & 0xff) << 16 | (text[k + 1] & 0xff) << 8 | (text[k + 2] & 0xff);
+        }
+        Arrays.sort(grams);
+        int n = 0;
+        for (int k = 0; k < grams.length; k += 1) {
+            if (n == 0 || grams[k] != grams[n - 1]) {
+                grams[n] = grams[k];
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(grams, n);
+    }
+
+    /** Returns a read-only mapping of the whole of FILE. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The postings of one trigram while the base is being written. */
+    private static class Postings {
+        /** The encoded postings, followed by unused space. */
+        private byte[] bytes = new byte[8];
+        /** Number of bytes used. */
+        private int size;
+        /** Number of postings. */
+        private int count;
+        /** The last position added. */
+        private int last = -1;
+
+        /** Adds POSITION, which is larger than any position added so far. */
+        void add(int position) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            }
+            int gap = position - last;
+            while (gap >= 0x80) {
+                bytes[size] = (byte) (gap | 0x80);
+                size += 1;
+                gap >>>= 7;
+            }
+            bytes[size] = (byte) gap;
+            size += 1;
+            count += 1;
+            last = position;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of deserialized objects, keyed by hash, so that Commits
+ * and Trees read again and again by one process are only deserialized once.
+ * Objects are immutable once stored, so cached ones never go stale.
+ *
+ * The cache is bounded by the total size of the serialized forms of its
+ * objects, and evicts the least recently used objects first.
+ *
+ * @author Eve Stroud
+ */
+class ObjectCache {
+
+    /** Default bound on the total serialized size of cached objects. */
+    static final long DEFAULT_CAPACITY = 32L << 20;
+
+    /** Cached objects, from least to most recently used. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Bound on the total serialized size of cached objects. */
+    private final long capacity;
+    /** Total serialized size of the cached objects. */
+    private long size;
+    /** Number of lookups that found their object. */
+    private long hits;
+    /** Number of lookups that did not find their object. */
+    private long misses;
+    /** Number of objects evicted to stay within the capacity. */
+    private long evictions;
+
+    /** A cached object and the size of its serialized form. */
+    private static class Entry {
+        /** The object. */
+        final Serializable value;
+        /** Size of its serialized form. */
+        final int size;
+
+        /** An entry for VALUE, whose serialized form is SIZE bytes long. */
+        Entry(Serializable value, int size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /** An empty cache holding objects of total serialized size up to
+     *  CAPACITY. */
+    ObjectCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /** Returns the object with hash HASH, or null if it is not cached. */
+    synchronized Serializable get(String hash) {
+        Entry entry = entries.get(hash);
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return entry.value;
+    }
+
+    /** Caches VALUE, whose serialized form is SIZE bytes long, under the
+     *  hash HASH, evicting the least recently used objects as needed.
+     *  Objects larger than the whole cache are not cached. */
+    synchronized void put(String hash, Serializable value, int size) {
+        if (size > capacity) {
+            return;
+        }
+        Entry old = entries.put(hash, new Entry(value, size));
+        this.size += size - (old == null ? 0 : old.size);
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (this.size > capacity) {
+            this.size -= eldest.next().getValue().size;
+            eldest.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Returns a description of the contents and counters of this cache. */
+    synchronized String stats() {
+        long lookups = hits + misses;
+        return String.format("object cache: %d objects, %d of %d bytes%n"
+                             + "hits: %d%nmisses: %d%nhit rate: %.1f%%%nevictions: %d",
+                             entries.size(), size, capacity, hits, misses,
+                             lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions);
+    }
+}
@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/** A place where the stored forms of objects, each starting with its
+ * encoding tag, are kept by hash. The pack of a repository is one; new
+ * objects go to another, its object store, chosen by the objectstore
+ * setting of the repository:
+ *     "loose"    a LooseObjectStore with one level of directories (default)
+ *     "loose:N"  a LooseObjectStore with N levels of directories, 1 to 4
+ *     "hashed"   a HashedObjectStore, a hash table held in one file
+ * Utils looks objects up in the pack before the object store, and pack
+ * moves the objects of the object store into the pack.
+ *
+ * @author Eve Stroud
+ */
+interface ObjectStore {
+
+    /** Returns the object store in DIR chosen by the objectstore setting
+     *  SETTING.  Throws IllegalArgumentException if SETTING is not valid. */
+    static ObjectStore open(String setting, File dir) {
+        if (setting.equals("hashed")) {
+            return new HashedObjectStore(Utils.join(dir, HashedObjectStore.FILE_NAME));
+        } else if (setting.equals("loose")) {
+            return new LooseObjectStore(dir, 1);
+        } else if (setting.matches("loose:[1-4]")) {
+            return new LooseObjectStore(dir, setting.charAt(6) - '0');
+        }
+        throw new IllegalArgumentException("invalid object store setting");
+    }
+
+    /** Returns whether the object with hash HASH is in this store. */
+    boolean contains(String hash);
+
+    /** Returns a stream of the stored form of the object with hash HASH, or
+     *  null if it is not in this store. */
+    InputStream open(String hash) throws IOException;
+
+    /** Returns the length of the stored form of the object with hash HASH,
+     *  or -1 if it is not in this store. */
+    long storedSize(String hash);
+
+    /** Adds the object with hash HASH and stored form STORED to this store,
+     *  unless it is there already. */
+    void write(String hash, byte[] stored);
+
+    /** Adds the object with hash HASH whose stored form is in the temporary
+     *  file TMP to this store, unless it is there already, and deletes or
+     *  moves TMP. */
+    void store(String hash, File tmp) throws IOException;
+
+    /** Returns the hashes of the objects in this store, in order. */
+    Set<String> hashes();
+
+    /** Removes the object with hash HASH from this store, if it is there. */
+    void delete(String hash);
+
+    /** Makes the objects added to this store durable and visible to other
+     *  processes, if they are not already. */
+    void sync();
+}
@@ -0,0 +1,764 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+import static gitlet.Utils.*;
+
+/** An append-only pack of gitlet objects. The pack consists of two files: a
+ * data file holding the contents of every object back to back, and an index
+ * file mapping each object hash to the offset of its entry in the data file.
+ *
+ * Data file: "GPAK", version, then one entry per object:
+ *     {type (1 byte), length (8 bytes), contents (length bytes)}
+ * Index file: "GPIX", version, object count, a 256-entry fan-out table of
+ * cumulative counts by first hash byte, the sorted 20-byte hashes, the
+ * 8-byte data offsets in the same order, and then the generation of the
+ * data file.
+ *
+ * The data file of generation 0 is objects.pack, and that of generation G
+ * objects-G.pack. Appending adds to the end of the current data file before
+ * the index is replaced. retain writes the data file of the next generation
+ * instead, and only then replaces the index, so a crash at any point leaves
+ * an index that agrees with the data file it names. Version 1 index files
+ * have no generation and always name objects.pack.
+ *
+ * The contents of a WHOLE entry are the stored form of its object. Those of
+ * a DELTA entry are the raw hash of another object in the pack, its base,
+ * followed by a Delta that rebuilds the object from the decoded contents of
+ * the base. Delta entries are read back as objects stored RAW, or without a
+ * tag in a repository whose objects have none, and the ones rebuilt are kept
+ * in a cache, so that reading the versions of a file one after another
+ * rebuilds each base once.
+ *
+ * Bases are chosen when objects are appended, much as git repack does: the
+ * blobs are sorted by the name and path of a file they are a version of,
+ * then by size, largest first, and each is encoded against the WINDOW blobs
+ * before it, keeping the smallest delta if it is less than half the size of
+ * the blob and smaller than its stored form. Blobs already in the pack with
+ * the same paths as the new ones are sorted in too, ahead of the new ones,
+ * as bases only. A base is never more than MAX_DEPTH deltas deep, so
+ * rebuilding an object reads at most MAX_DEPTH + 1 entries.
+ *
+ * Both files are memory-mapped when read.
+ *
+ * As an ObjectStore, a pack adds objects one at a time by rewriting its
+ * index, so it is meant to be added to in bulk, by append.
+ *
+ * @author Eve Stroud
+ */
+class Pack implements ObjectStore {
+
+    /** Magic number at the start of the data file. */
+    private static final int DATA_MAGIC = 0x4750414b;
+    /** Magic number at the start of the index file. */
+    private static final int INDEX_MAGIC = 0x47504958;
+    /** Version of the data file format. */
+    private static final int VERSION = 1;
+    /** Version of the index file format. */
+    private static final int INDEX_VERSION = 2;
+    /** Size of the data file header. */
+    private static final int DATA_HEADER = 8;
+    /** Size of the index file header, including the fan-out table. */
+    private static final int INDEX_HEADER = 12 + 256 * 4;
+    /** Size of the header in front of each entry in the data file. */
+    private static final int ENTRY_HEADER = 9;
+    /** Length of a raw SHA-1 hash. */
+    private static final int HASH_BYTES = UID_LENGTH / 2;
+    /** Entry type of an object stored in full. */
+    static final byte WHOLE = 0;
+    /** Entry type of an object stored as a delta against another. */
+    static final byte DELTA = 1;
+    /** Number of blobs before each blob in the sorted order that are tried
+     *  as its base. */
+    static final int WINDOW = 10;
+    /** Largest number of deltas to apply to rebuild an object. */
+    static final int MAX_DEPTH = 50;
+    /** Bound on the total size of the objects rebuilt from deltas, or
+     *  decompressed to be used as bases, kept in memory. */
+    static final long BASE_CACHE_SIZE = 16L << 20;
+
+    /** The pack of the current repository, opened on first use. */
+    private static Pack repositoryPack;
+
+    /** The directory holding this pack. */
+    private final File dir;
+    /** The data file of this pack. */
+    private File dataFile;
+    /** Generation of the data file of this pack. */
+    private int generation;
+    /** The index file of this pack. */
+    private final File indexFile;
+    /** Mapping of the index file, or null if this pack is empty. */
+    private MappedByteBuffer index;
+    /** Mapping of the data file, or null if it is too large to map whole. */
+    private MappedByteBuffer data;
+    /** Number of objects in this pack. */
+    private int size;
+    /** Stored forms, encoded RAW, of objects rebuilt from deltas or
+     *  decompressed to be used as bases, by hash. */
+    private final ObjectCache bases = new ObjectCache(BASE_CACHE_SIZE);
+
+    /** Opens the pack stored in DIR. The pack is empty if DIR does not
+     *  contain one. */
+    Pack(File dir) {
+        this.dir = dir;
+        indexFile = join(dir, "objects.idx");
+        load();
+    }
+
+    /** Returns the pack of the current repository. */
+    static synchronized Pack repositoryPack() {
+        if (repositoryPack == null) {
+            repositoryPack = new Pack(Repository.PACK_DIR);
+        }
+        return repositoryPack;
+    }
+
+    /** Forgets the pack of the current repository, so it is opened again on
+     *  next use. */
+    static synchronized void reset() {
+        repositoryPack = null;
+    }
+
+    /** Maps the index and data files, if they exist. */
+    private void load() {
+        index = null;
+        data = null;
+        size = 0;
+        generation = 0;
+        dataFile = dataFileOf(0);
+        if (!indexFile.isFile()) {
+            return;
+        }
+        MappedByteBuffer mapped = map(indexFile, 0, indexFile.length());
+        int version = mapped.getInt(4);
+        if (mapped.getInt(0) != INDEX_MAGIC || version < 1 || version > INDEX_VERSION) {
+            throw error("Corrupt pack index %s.", indexFile);
+        }
+        int count = mapped.getInt(8);
+        if (version >= 2) {
+            generation = mapped.getInt(INDEX_HEADER + count * (HASH_BYTES + 8));
+            dataFile = dataFileOf(generation);
+        }
+        if (!dataFile.isFile()) {
+            return;
+        }
+        index = mapped;
+        size = count;
+        if (dataFile.length() <= Integer.MAX_VALUE) {
+            data = map(dataFile, 0, dataFile.length());
+        }
+    }
+
+    /** Returns the data file of generation GEN. */
+    private File dataFileOf(int gen) {
+        return join(dir, gen == 0 ? "objects.pack" : "objects-" + gen + ".pack");
+    }
+
+    /** Returns a read-only mapping of LENGTH bytes of FILE starting at
+     *  POSITION. */
+    private static MappedByteBuffer map(File file, long position, long length) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return size;
+    }
+
+    /** Returns whether this pack contains the object with hash HASH. */
+    @Override
+    public boolean contains(String hash) {
+        return find(hexToBytes(hash)) >= 0;
+    }
+
+    /** Returns the hash of the Ith object of this pack, in hash order. */
+    String hashAt(int i) {
+        byte[] hash = new byte[HASH_BYTES];
+        index.get(INDEX_HEADER + i * HASH_BYTES, hash);
+        return bytesToHex(hash);
+    }
+
+    /** Returns the position of the object with hash HASH in hash order, or
+     *  -1 if this pack does not contain it. */
+    int position(String hash) {
+        return find(hexToBytes(hash));
+    }
+
+    /** Returns the hash of the base of the Ith object of this pack, in hash
+     *  order, or null if it is stored whole. */
+    String baseOf(int i) {
+        long offset = offsetAt(i);
+        return typeAt(offset) == DELTA ? bytesToHex(baseAt(offset)) : null;
+    }
+
+    /** Returns the data file offset of the Ith object of this pack. */
+    private long offsetAt(int i) {
+        return index.getLong(INDEX_HEADER + size * HASH_BYTES + i * 8);
+    }
+
+    /** Returns the position of the raw hash HASH in the index, or -1 if this
+     *  pack does not contain it. */
+    private int find(byte[] hash) {
+        if (index == null) {
+            return -1;
+        }
+        int first = hash[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(12 + (first - 1) * 4);
+        int hi = index.getInt(12 + first * 4) - 1;
+        byte[] probe = new byte[HASH_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(INDEX_HEADER + mid * HASH_BYTES, probe);
+            int cmp = Arrays.compareUnsigned(probe, hash);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns a stream of the contents of the object with hash HASH, or null
+     *  if this pack does not contain it.  The stream reads directly from the
+     *  mapped data file. */
+    @Override
+    public InputStream open(String hash) {
+        ByteBuffer contents = contents(hash);
+        return contents == null ? null : new BufferInputStream(contents);
+    }
+
+    /** Returns the stored contents of the object with hash HASH, still in
+     *  their encoding, as a slice of the mapped data file, or null if this
+     *  pack does not contain it. An object stored as a delta is rebuilt and
+     *  returned encoded RAW, or without a tag if the objects of the
+     *  repository have none. */
+    ByteBuffer contents(String hash) {
+        int i = find(hexToBytes(hash));
+        return i < 0 ? null : storedAt(hash, offsetAt(i));
+    }
+
+    /** Returns the stored contents of the object with hash HASH, whose entry
+     *  is at OFFSET in the data file, rebuilding it if it is a delta. */
+    private ByteBuffer storedAt(String hash, long offset) {
+        ByteBuffer entry = entryAt(offset);
+        if (typeAt(offset) != DELTA) {
+            return entry;
+        }
+        byte[] stored = (byte[]) bases.get(hash);
+        if (stored == null) {
+            byte[] base = baseAt(offset);
+            ByteBuffer delta = entry.position(HASH_BYTES).slice();
+            stored = new byte[1 + Delta.targetLength(delta)];
+            stored[0] = RAW;
+            Delta.apply(decoded(bytesToHex(base)), delta, stored, 1);
+            bases.put(hash, stored, stored.length);
+        }
+        if (!tagged()) {
+            return ByteBuffer.wrap(stored, 1, stored.length - 1).slice();
+        }
+        return ByteBuffer.wrap(stored);
+    }
+
+    /** Returns the decoded contents of the object with hash HASH, which is
+     *  the base of a delta in this pack. */
+    private ByteBuffer decoded(String hash) {
+        byte[] stored = (byte[]) bases.get(hash);
+        if (stored == null) {
+            ByteBuffer contents = contents(hash);
+            if (contents == null) {
+                throw error("Delta base %s is missing from the pack.", hash);
+            } else if (!tagged()) {
+                return contents;
+            } else if (contents.get(contents.position()) == RAW) {
+                return contents.position(contents.position() + 1).slice();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(RAW);
+            try (InputStream in = decode(new BufferInputStream(contents))) {
+                in.transferTo(out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            stored = out.toByteArray();
+            bases.put(hash, stored, stored.length);
+        }
+        return ByteBuffer.wrap(stored, 1, stored.length - 1).slice();
+    }
+
+    /** Returns the decoded contents of the object with hash HASH, which is
+     *  in this pack, as an array. */
+    private byte[] decodedArray(String hash) {
+        ByteBuffer contents = decoded(hash);
+        byte[] array = new byte[contents.remaining()];
+        contents.get(array);
+        return array;
+    }
+
+    /** Returns the type of the entry at OFFSET in the data file. */
+    private byte typeAt(long offset) {
+        return data != null ? data.get((int) offset) : map(dataFile, offset, 1).get(0);
+    }
+
+    /** Returns the raw hash of the base of the delta entry at OFFSET in
+     *  the data file. */
+    private byte[] baseAt(long offset) {
+        byte[] base = new byte[HASH_BYTES];
+        entryAt(offset).get(base);
+        return base;
+    }
+
+    /** Returns the position of the base of the delta entry at OFFSET in the
+     *  data file, which must be in this pack. */
+    private int basePositionAt(long offset) {
+        byte[] base = baseAt(offset);
+        int i = find(base);
+        if (i < 0) {
+            throw error("Delta base %s is missing from the pack.", bytesToHex(base));
+        }
+        return i;
+    }
+
+    /** Returns the number of deltas applied to rebuild the object whose
+     *  entry is at OFFSET in the data file. */
+    private int depthAt(long offset) {
+        int depth = 0;
+        while (typeAt(offset) == DELTA) {
+            offset = offsetAt(basePositionAt(offset));
+            depth += 1;
+        }
+        return depth;
+    }
+
+    /** An InputStream reading the remaining contents of a ByteBuffer. */
+    private static class BufferInputStream extends InputStream {
+
+        /** The buffer being read. */
+        private final ByteBuffer buffer;
+
+        /** A stream reading the remaining contents of BUFFER. */
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /** Returns a buffer holding the contents of the entry at OFFSET in the
+     *  data file. */
+    private ByteBuffer entryAt(long offset) {
+        if (data != null) {
+            int start = (int) offset;
+            long length = data.getLong(start + 1);
+            return data.slice(start + ENTRY_HEADER, (int) length);
+        }
+        MappedByteBuffer header = map(dataFile, offset, ENTRY_HEADER);
+        return map(dataFile, offset + ENTRY_HEADER, header.getLong(1));
+    }
+
+    /** Appends the objects of SOURCE with hashes HASHES to the end of this
+     *  pack and rewrites the index to include them. Objects already in the
+     *  pack are skipped. The blobs that PATHS maps to the path of a file they
+     *  are a version of are stored as deltas where that makes them smaller.
+     *  Returns the number of objects added. */
+    int append(ObjectStore source, Set<String> hashes, Map<String, String> paths) {
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        for (int i = 0; i < size; i += 1) {
+            offsets.put(hashAt(i), offsetAt(i));
+        }
+        Map<String, byte[]> deltas = chooseDeltas(source, hashes, paths, offsets);
+        int added = 0;
+        try {
+            dataFile.getParentFile().mkdirs();
+            try (FileChannel out = FileChannel.open(dataFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (out.size() == 0) {
+                    ByteBuffer header = ByteBuffer.allocate(DATA_HEADER);
+                    header.putInt(DATA_MAGIC).putInt(VERSION).flip();
+                    out.write(header);
+                }
+                long position = out.size();
+                for (String hash : hashes) {
+                    if (offsets.containsKey(hash)) {
+                        continue;
+                    }
+                    byte[] delta = deltas.get(hash);
+                    if (delta != null) {
+                        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER + delta.length);
+                        entry.put(DELTA).putLong(delta.length).put(delta).flip();
+                        offsets.put(hash, position);
+                        while (entry.hasRemaining()) {
+                            position += out.write(entry, position);
+                        }
+                        added += 1;
+                        continue;
+                    }
+                    long length = source.storedSize(hash);
+                    ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+                    header.put(WHOLE).putLong(length).flip();
+                    out.write(header, position);
+                    try (InputStream in = source.open(hash)) {
+                        in.transferTo(Channels.newOutputStream(out.position(position + ENTRY_HEADER)));
+                    }
+                    offsets.put(hash, position);
+                    position += ENTRY_HEADER + length;
+                    added += 1;
+                }
+                out.force(true);
+            }
+            writeIndex(offsets, generation);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        load();
+        return added;
+    }
+
+    /** Appends the objects in STORED, a map of hashes to their stored forms,
+     *  to the end of this pack as whole entries, in one write, and rewrites
+     *  the index to include them. Objects already in the pack are skipped.
+     *  Returns the number of objects added. */
+    int appendStored(Map<String, byte[]> stored) {
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        for (int i = 0; i < size; i += 1) {
+            offsets.put(hashAt(i), offsetAt(i));
+        }
+        int added = 0;
+        try {
+            dataFile.getParentFile().mkdirs();
+            try (FileChannel out = FileChannel.open(dataFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream entries = new DataOutputStream(bytes);
+                long start = out.size();
+                if (start == 0) {
+                    entries.writeInt(DATA_MAGIC);
+                    entries.writeInt(VERSION);
+                }
+                for (Map.Entry<String, byte[]> object : stored.entrySet()) {
+                    if (offsets.containsKey(object.getKey())) {
+                        continue;
+                    }
+                    offsets.put(object.getKey(), start + entries.size());
+                    entries.writeByte(WHOLE);
+                    entries.writeLong(object.getValue().length);
+                    entries.write(object.getValue());
+                    added += 1;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                for (long position = start; buffer.hasRemaining(); ) {
+                    position += out.write(buffer, position);
+                }
+                out.force(true);
+            }
+            writeIndex(offsets, generation);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        load();
+        return added;
+    }
+
+    /** Returns the entries, each the raw hash of a base followed by a
+     *  delta, of the objects of SOURCE with hashes HASHES that are to be
+     *  stored as deltas, by hash. PATHS maps blobs to paths, and PACKED maps
+     *  the objects already in the pack to their offsets. */
+    private Map<String, byte[]> chooseDeltas(ObjectStore source, Set<String> hashes,
+                                             Map<String, String> paths, Map<String, Long> packed) {
+        Map<String, Long> sizes = new HashMap<>();
+        Set<String> newPaths = new HashSet<>();
+        for (String hash : hashes) {
+            if (!packed.containsKey(hash) && paths.containsKey(hash)) {
+                sizes.put(hash, source.storedSize(hash));
+                newPaths.add(paths.get(hash));
+            }
+        }
+        for (Map.Entry<String, Long> object : packed.entrySet()) {
+            if (newPaths.contains(paths.get(object.getKey()))) {
+                sizes.put(object.getKey(), (long) entryAt(object.getValue()).remaining());
+            }
+        }
+        List<String> blobs = new ArrayList<>(sizes.keySet());
+        blobs.sort(Comparator.comparing((String hash) -> fileName(paths.get(hash)))
+                   .thenComparing(paths::get)
+                   .thenComparing(hash -> !packed.containsKey(hash))
+                   .thenComparing(sizes::get, Comparator.reverseOrder()));
+
+        Map<String, byte[]> deltas = new HashMap<>();
+        Deque<Base> window = new ArrayDeque<>();
+        for (String hash : blobs) {
+            byte[] contents;
+            int depth = 0;
+            Long offset = packed.get(hash);
+            if (offset != null) {
+                if (typeAt(offset) == WHOLE && tagged() && entryAt(offset).get() == CHUNKED) {
+                    continue;
+                }
+                contents = decodedArray(hash);
+                depth = depthAt(offset);
+            } else {
+                contents = readUnpacked(source, hash);
+                if (contents == null) {
+                    continue;
+                }
+                int limit = (int) Math.min(sizes.get(hash) - HASH_BYTES - 1, contents.length / 2);
+                byte[] best = null;
+                Base bestBase = null;
+                for (Base base : window) {
+                    byte[] delta = base.encoder.encode(contents, best == null ? limit : best.length - 1);
+                    if (delta != null) {
+                        best = delta;
+                        bestBase = base;
+                    }
+                }
+                if (best != null) {
+                    byte[] entry = Arrays.copyOf(bestBase.hash, HASH_BYTES + best.length);
+                    System.arraycopy(best, 0, entry, HASH_BYTES, best.length);
+                    deltas.put(hash, entry);
+                    depth = bestBase.depth + 1;
+                }
+            }
+            if (depth < MAX_DEPTH) {
+                window.addFirst(new Base(hexToBytes(hash), new Delta(contents), depth));
+                if (window.size() > WINDOW) {
+                    window.removeLast();
+                }
+            }
+        }
+        return deltas;
+    }
+
+    /** A blob in the window of possible bases. */
+    private static class Base {
+        /** The raw hash of the blob. */
+        final byte[] hash;
+        /** An encoder of deltas against the blob. */
+        final Delta encoder;
+        /** Number of deltas applied to rebuild the blob. */
+        final int depth;
+
+        /** A base with raw hash HASH, encoding deltas with ENCODER, that is
+         *  rebuilt by applying DEPTH deltas. */
+        Base(byte[] hash, Delta encoder, int depth) {
+            this.hash = hash;
+            this.encoder = encoder;
+            this.depth = depth;
+        }
+    }
+
+    /** Returns the last component of PATH. */
+    private static String fileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /** Returns the decoded contents of the object of SOURCE with hash HASH,
+     *  or null if it is a blob stored as chunks. */
+    private static byte[] readUnpacked(ObjectStore source, String hash) {
+        try (InputStream in = new BufferedInputStream(source.open(hash))) {
+            in.mark(1);
+            if (tagged() && in.read() == CHUNKED) {
+                return null;
+            }
+            in.reset();
+            return decode(in).readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrites this pack to hold only the objects whose positions KEEP
+     *  accepts. The kept objects are copied to the data file of the next
+     *  generation, which is forced to disk before the index is replaced to
+     *  name it, and the old data file is deleted only after that. A delta
+     *  whose base is dropped is stored whole instead, and one whose base is
+     *  missing leaves the pack as it was. Returns the number of objects
+     *  dropped. */
+    int retain(IntPredicate keep) {
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        File tmp = dataFileOf(generation + 1);
+        try (FileChannel in = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER);
+            header.putInt(DATA_MAGIC).putInt(VERSION).flip();
+            out.write(header);
+            ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER);
+            for (int i = 0; i < size; i += 1) {
+                if (!keep.test(i)) {
+                    continue;
+                }
+                long offset = offsetAt(i);
+                offsets.put(hashAt(i), out.position());
+                if (typeAt(offset) == DELTA && !keep.test(basePositionAt(offset))) {
+                    ByteBuffer stored = contents(hashAt(i));
+                    entryHeader.clear();
+                    entryHeader.put(WHOLE).putLong(stored.remaining()).flip();
+                    out.write(entryHeader);
+                    while (stored.hasRemaining()) {
+                        out.write(stored);
+                    }
+                    continue;
+                }
+                entryHeader.clear();
+                in.read(entryHeader, offset);
+                long length = ENTRY_HEADER + entryHeader.getLong(1);
+                for (long copied = 0; copied < length; ) {
+                    copied += in.transferTo(offset + copied, length - copied, out);
+                }
+            }
+            out.force(true);
+        } catch (GitletException excp) {
+            tmp.delete();
+            throw excp;
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int dropped = size - offsets.size();
+        File old = dataFile;
+        try {
+            writeIndex(offsets, generation + 1);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        old.delete();
+        load();
+        return dropped;
+    }
+
+    /** Writes an index for the object hashes and data file offsets in OFFSETS
+     *  into the data file of generation GEN, replacing the current index
+     *  file atomically and durably. */
+    private void writeIndex(TreeMap<String, Long> offsets, int gen) throws IOException {
+        int[] fanout = new int[256];
+        for (String hash : offsets.keySet()) {
+            fanout[Integer.parseInt(hash.substring(0, 2), 16)] += 1;
+        }
+        File tmp = join(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(offsets.size());
+            int total = 0;
+            for (int count : fanout) {
+                total += count;
+                out.writeInt(total);
+            }
+            for (String hash : offsets.keySet()) {
+                out.write(hexToBytes(hash));
+            }
+            for (long offset : offsets.values()) {
+                out.writeLong(offset);
+            }
+            out.writeInt(gen);
+        }
+        try (FileChannel written = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+            written.force(true);
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel directory = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    /** Returns the length of the stored form of the object with hash HASH,
+     *  as rebuilt if it is a delta, or -1 if this pack does not contain
+     *  it. */
+    @Override
+    public long storedSize(String hash) {
+        ByteBuffer contents = contents(hash);
+        return contents == null ? -1 : contents.remaining();
+    }
+
+    /** Appends the object with hash HASH and stored form STORED, which
+     *  rewrites the index. */
+    @Override
+    public void write(String hash, byte[] stored) {
+        appendStored(Map.of(hash, stored));
+    }
+
+    @Override
+    public void store(String hash, File tmp) throws IOException {
+        write(hash, Files.readAllBytes(tmp.toPath()));
+        tmp.delete();
+    }
+
+    @Override
+    public Set<String> hashes() {
+        Set<String> hashes = new TreeSet<>();
+        for (int i = 0; i < size; i += 1) {
+            hashes.add(hashAt(i));
+        }
+        return hashes;
+    }
+
+    /** Drops the object with hash HASH, which rewrites the pack. */
+    @Override
+    public void delete(String hash) {
+        int position = position(hash);
+        if (position >= 0) {
+            retain(i -> i != position);
+        }
+    }
+
+    /** Does nothing, as appending to a pack forces it to disk. */
+    @Override
+    public void sync() {
+    }
+}
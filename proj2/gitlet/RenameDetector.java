@@ -0,0 +1,218 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Pairs up removed files with added files that are renames of them.
+ *
+ * Files with identical contents are paired first, by hash alone. The rest
+ * are compared by fingerprint: contents are cut into lines, or 64-byte pieces
+ * of longer lines, and each piece is hashed, so a fingerprint is a sorted
+ * list of piece hashes with the number of bytes each covers. The similarity
+ * of two files is the number of bytes their fingerprints have in common
+ * divided by the size of the larger file, computed by merging the two lists.
+ * Pairs at least MIN_SIMILARITY alike are then matched, most similar first.
+ *
+ * Two files whose sizes differ by more than MIN_SIMILARITY allows cannot be
+ * alike enough, so sizes are compared before anything is read. Stored blobs
+ * have no recorded size, so each removed file is read once, to fingerprint
+ * it; an added file is then fingerprinted only if its size is close enough
+ * to that of some removed file. Scoring is linear in the size of the
+ * fingerprints, but the number of pairs grows with the product of the
+ * numbers of removed and added files. If there are more than MAX_PAIRS,
+ * only identical files are paired.
+ *
+ * @author Eve Stroud
+ */
+class RenameDetector {
+
+    /** Smallest similarity, in percent, of a file and its rename. */
+    static final int MIN_SIMILARITY = 50;
+    /** Largest number of pairs of files compared by fingerprint. */
+    static final int MAX_PAIRS = 250_000;
+    /** Longest piece of a line hashed as one piece of a fingerprint. */
+    private static final int PIECE = 64;
+    /** Initial value of the FNV-1a hash of a piece. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /** Multiplier of the FNV-1a hash of a piece. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Returns a map from the added files to the removed files they were
+     *  renamed from, for the renames found between REMOVED and ADDED.
+     *
+     * @param removed Maps names of removed files to the hashes of their
+     *                last stored versions.
+     * @param added Maps names of added files in the working directory to the
+     *              hashes of their contents.
+     */
+    static Map<String, String> detect(Map<String, String> removed, Map<String, String> added) {
+        Map<String, String> renames = new TreeMap<>();
+        Map<String, String> removedByHash = new HashMap<>();
+        for (Map.Entry<String, String> file : removed.entrySet()) {
+            removedByHash.putIfAbsent(file.getValue(), file.getKey());
+        }
+        List<String> targets = new ArrayList<>();
+        for (Map.Entry<String, String> file : added.entrySet()) {
+            String source = removedByHash.remove(file.getValue());
+            if (source != null) {
+                renames.put(file.getKey(), source);
+            } else {
+                targets.add(file.getKey());
+            }
+        }
+        List<String> sources = new ArrayList<>(removed.keySet());
+        sources.removeAll(new HashSet<>(renames.values()));
+        if (sources.isEmpty() || targets.isEmpty()
+            || (long) sources.size() * targets.size() > MAX_PAIRS) {
+            return renames;
+        }
+
+        List<Fingerprint> from = new ArrayList<>();
+        long[] sourceSizes = new long[sources.size()];
+        for (int i = 0; i < sources.size(); i += 1) {
+            from.add(Fingerprint.ofObject(removed.get(sources.get(i))));
+            sourceSizes[i] = from.get(i).size;
+        }
+        Arrays.sort(sourceSizes);
+        List<Fingerprint> to = new ArrayList<>();
+        for (String target : targets) {
+            File file = Utils.join(Repository.CWD, target);
+            to.add(hasAlikeSize(sourceSizes, file.length()) ? Fingerprint.ofFile(file) : null);
+        }
+        List<long[]> candidates = new ArrayList<>();
+        for (int i = 0; i < from.size(); i += 1) {
+            for (int j = 0; j < to.size(); j += 1) {
+                if (to.get(j) == null) {
+                    continue;
+                }
+                int score = from.get(i).similarity(to.get(j));
+                if (score >= MIN_SIMILARITY) {
+                    candidates.add(new long[] {score, i, j});
+                }
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b[0], a[0]));
+        boolean[] fromUsed = new boolean[from.size()];
+        boolean[] toUsed = new boolean[to.size()];
+        for (long[] candidate : candidates) {
+            int i = (int) candidate[1];
+            int j = (int) candidate[2];
+            if (!fromUsed[i] && !toUsed[j]) {
+                fromUsed[i] = true;
+                toUsed[j] = true;
+                renames.put(targets.get(j), sources.get(i));
+            }
+        }
+        return renames;
+    }
+
+    /** Returns whether any of SIZES, which are sorted, is close enough to
+     *  SIZE for the two files to be MIN_SIMILARITY alike. */
+    static boolean hasAlikeSize(long[] sizes, long size) {
+        long smallest = (size * MIN_SIMILARITY + 99) / 100;
+        long largest = size * 100 / MIN_SIMILARITY;
+        int i = Arrays.binarySearch(sizes, smallest);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < sizes.length && sizes[i] <= largest;
+    }
+
+    /** The hashed pieces of the contents of a file. */
+    static class Fingerprint {
+        /** Hashes of the distinct pieces, in increasing order. */
+        private final long[] hashes;
+        /** Number of bytes covered by each piece in hashes. */
+        private final int[] counts;
+        /** Size of the contents. */
+        private final long size;
+
+        /** The fingerprint of the contents read from IN. */
+        Fingerprint(InputStream in) throws IOException {
+            Map<Long, Integer> pieces = new HashMap<>();
+            byte[] buffer = new byte[Utils.BUFFER_SIZE];
+            long hash = FNV_OFFSET;
+            int length = 0;
+            long total = 0;
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                for (int i = 0; i < n; i += 1) {
+                    hash = (hash ^ (buffer[i] & 0xff)) * FNV_PRIME;
+                    length += 1;
+                    if (buffer[i] == '\n' || length == PIECE) {
+                        pieces.merge(hash, length, Integer::sum);
+                        hash = FNV_OFFSET;
+                        length = 0;
+                    }
+                }
+                total += n;
+            }
+            if (length > 0) {
+                pieces.merge(hash, length, Integer::sum);
+            }
+            size = total;
+            hashes = new long[pieces.size()];
+            int i = 0;
+            for (long piece : pieces.keySet()) {
+                hashes[i] = piece;
+                i += 1;
+            }
+            Arrays.sort(hashes);
+            counts = new int[hashes.length];
+            for (i = 0; i < hashes.length; i += 1) {
+                counts[i] = pieces.get(hashes[i]);
+            }
+        }
+
+        /** Returns the fingerprint of the stored object with hash HASH. */
+        static Fingerprint ofObject(String hash) {
+            try (InputStream in = Utils.openObject(hash)) {
+                return new Fingerprint(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns the fingerprint of the contents of FILE. */
+        static Fingerprint ofFile(File file) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                return new Fingerprint(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns how alike this and OTHER are, in percent. */
+        int similarity(Fingerprint other) {
+            long larger = Math.max(size, other.size);
+            if (larger == 0) {
+                return 100;
+            } else if (Math.min(size, other.size) * 100 < larger * MIN_SIMILARITY) {
+                return 0;
+            }
+            long common = 0;
+            int i = 0;
+            int j = 0;
+            while (i < hashes.length && j < other.hashes.length) {
+                if (hashes[i] < other.hashes[j]) {
+                    i += 1;
+                } else if (hashes[i] > other.hashes[j]) {
+                    j += 1;
+                } else {
+                    common += Math.min(counts[i], other.counts[j]);
+                    i += 1;
+                    j += 1;
+                }
+            }
+            return (int) (common * 100 / larger);
+        }
+    }
+}
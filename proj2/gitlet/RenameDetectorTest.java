@@ -0,0 +1,91 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/** Tests of RenameDetector that need no repository: pairing identical files
+ *  by hash, the size prefilter, and the MAX_PAIRS cutoff. The hashes given
+ *  name no stored objects, so a test fails if detect reads one.
+ *
+ *  @author Eve Stroud
+ */
+public class RenameDetectorTest {
+
+    /** Added files are paired with the removed files of the same hash,
+     *  whatever their names. */
+    @Test
+    public void identicalFilesArePairedByHash() {
+        Map<String, String> removed = Map.of("a.txt", Utils.sha1("a"), "b.txt", Utils.sha1("b"));
+        Map<String, String> added = Map.of("c.txt", Utils.sha1("b"), "d.txt", Utils.sha1("a"));
+        assertEquals(Map.of("c.txt", "b.txt", "d.txt", "a.txt"),
+                     RenameDetector.detect(removed, added));
+    }
+
+    /** Once every removed file is paired, the added files left over are
+     *  not compared with anything. */
+    @Test
+    public void unpairedAddedFilesAreLeftAlone() {
+        Map<String, String> removed = Map.of("a.txt", Utils.sha1("a"));
+        Map<String, String> added = Map.of("c.txt", Utils.sha1("a"), "e.txt", Utils.sha1("e"));
+        assertEquals(Map.of("c.txt", "a.txt"), RenameDetector.detect(removed, added));
+    }
+
+    /** Past MAX_PAIRS, only identical files are paired, and nothing is read
+     *  to fingerprint the rest. */
+    @Test
+    public void tooManyPairsPairsOnlyIdenticalFiles() {
+        Map<String, String> removed = new TreeMap<>();
+        Map<String, String> added = new TreeMap<>();
+        int side = (int) Math.sqrt(RenameDetector.MAX_PAIRS) + 2;
+        for (int i = 0; i < side; i += 1) {
+            removed.put("old" + i, Utils.sha1("old", Integer.toString(i)));
+            added.put("new" + i, Utils.sha1("new", Integer.toString(i)));
+        }
+        removed.put("kept", Utils.sha1("kept"));
+        added.put("moved", Utils.sha1("kept"));
+        assertEquals(Map.of("moved", "kept"), RenameDetector.detect(removed, added));
+    }
+
+    /** A size is alike to the sorted sizes when one of them is at least
+     *  MIN_SIMILARITY percent of it and it is at least MIN_SIMILARITY
+     *  percent of that one. */
+    @Test
+    public void sizePrefilter() {
+        long[] sizes = {100, 1000};
+        assertTrue(RenameDetector.hasAlikeSize(sizes, 100));
+        assertTrue(RenameDetector.hasAlikeSize(sizes, 50));
+        assertTrue(RenameDetector.hasAlikeSize(sizes, 200));
+        assertTrue(RenameDetector.hasAlikeSize(sizes, 500));
+        assertTrue(RenameDetector.hasAlikeSize(sizes, 2000));
+        assertFalse(RenameDetector.hasAlikeSize(sizes, 49));
+        assertFalse(RenameDetector.hasAlikeSize(sizes, 201));
+        assertFalse(RenameDetector.hasAlikeSize(sizes, 499));
+        assertFalse(RenameDetector.hasAlikeSize(sizes, 2001));
+        assertFalse(RenameDetector.hasAlikeSize(new long[0], 100));
+    }
+
+    /** Files whose sizes are too far apart score 0 without being compared,
+     *  and files alike in size score the share of bytes they have in common. */
+    @Test
+    public void similarity() throws IOException {
+        String lines = "one\ntwo\nthree\nfour\n";
+        assertEquals(100, fingerprint(lines).similarity(fingerprint(lines)));
+        assertEquals(0, fingerprint(lines).similarity(fingerprint(lines + lines + lines)));
+        assertEquals(0, fingerprint("one\n").similarity(fingerprint("one\n" + "x".repeat(5))));
+        assertEquals(100 * 8 / 19, fingerprint(lines).similarity(fingerprint("one\ntwo\nsix\nten\n")));
+        assertEquals(100, fingerprint("").similarity(fingerprint("")));
+    }
+
+    /** Returns the fingerprint of CONTENTS. */
+    private static RenameDetector.Fingerprint fingerprint(String contents) throws IOException {
+        return new RenameDetector.Fingerprint(
+            new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+    }
+}
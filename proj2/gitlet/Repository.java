@@ -1,9 +1,31 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import static gitlet.Utils.*;
 
@@ -20,31 +42,44 @@ public class Repository {
     /** The .gitlet directory. */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
     public static final File OBJECTS_DIR = join(GITLET_DIR, "objects");
+    /** Directory holding the pack of objects gathered by the pack command. */
+    public static final File PACK_DIR = join(OBJECTS_DIR, "pack");
     /** References directory. */
     public static final File REFS_DIR = join(GITLET_DIR, "refs");
     /** The index file to keep track of the working directory. */
     public static final File INDEX = join(GITLET_DIR, "index");
     /** HEAD pointer. Keeps track of current position in the commit tree. */
     public static final File HEAD = join(GITLET_DIR, "head");
+    /** Directory holding the commit graph. */
+    public static final File GRAPH_DIR = join(GITLET_DIR, "graph");
+    /** Repository settings. */
+    public static final File CONFIG = join(GITLET_DIR, "config");
+    /** Number of objects moved to another object store per journal
+     * transaction. */
+    private static final int MOVE_BATCH = 1000;
+
+    /** The index, as last read or written by this process. */
+    private static Index cachedIndex;
+    /** Stat information of the index file when cachedIndex was read or written. */
+    private static long[] cachedIndexStat;
 
     /** Initialize a Gitlet repository in the current directory. */
    public static void init() {
        if (GITLET_DIR.exists()) {
-           Utils.message("A Gitlet version-control system already exists in the current directory.");
-           System.exit(0);
+           throw error("A Gitlet version-control system already exists in the current directory.");
        }
        GITLET_DIR.mkdir();
        OBJECTS_DIR.mkdir();
        REFS_DIR.mkdir();
+       Config.set("format", TAGGED_FORMAT);
        Commit initialCommit = new Commit();
-       File initialCommitFile = getFileFromHash(initialCommit.hash);
-       writeObject(initialCommitFile, initialCommit);
+       writeObject(initialCommit.hash, initialCommit);
        String branch = "master";
        newBranch(branch, initialCommit.hash);
-       Utils.createFile(HEAD);
-       Utils.writeContents(HEAD, branch);
+       CommitGraph.repositoryGraph().add(initialCommit);
+       Journal.write(HEAD, branch.getBytes(StandardCharsets.UTF_8));
        Index index = new Index();
-       Utils.writeObject(INDEX, index);
+       writeIndex(index);
    }
 
     /** Create a new branch.
@@ -54,33 +89,108 @@ public class Repository {
      */
     public static void newBranch(String name, String commit) {
         File branch = join(REFS_DIR, name);
-        if (branch.exists()) {
-            System.out.println("Branch already exists.");
-            System.exit(0);
+        if (Journal.exists(branch)) {
+            throw error("A branch with that name already exists.");
         }
-        Utils.createFile(branch);
-        Utils.writeContents(branch, commit);
+        Journal.write(branch, commit.getBytes(StandardCharsets.UTF_8));
     }
 
-    /** Add a file to the staging area.
+    /** Add files to the staging area. The files are hashed and written to the
+     * object store in parallel, and the index is written once at the end.
      *
-     * @param fileName Name of the file to be added.
+     * @param fileNames Names of the files to be added. Each may also name a
+     *                  directory, all of whose files are added, or be a glob
+     *                  pattern matched against paths in the working directory.
+     *                  Only files in the sparse checkout are added.
      */
-    public static void add(String fileName) {
+    public static void add(String... fileNames) {
+        Index index = readIndex();
+        addFiles(index, fileNames);
+        writeIndex(index);
+    }
+
+    /** Stages the files named by fileNames in index, as add does, without
+     * writing the index. */
+    static void addFiles(Index index, String... fileNames) {
+        Set<String> paths = new TreeSet<>();
+        for (String fileName : fileNames) {
+            List<String> matches = expandPath(fileName);
+            File file = join(CWD, fileName);
+            if (matches.isEmpty() && file.isDirectory()
+                && !Sparse.includesDirectory(workingPath(file))) {
+                throw error("File is outside the sparse checkout.");
+            } else if (matches.isEmpty()) {
+                throw error("File does not exist.");
+            }
+            for (String path : matches) {
+                if (Sparse.includes(path)) {
+                    paths.add(path);
+                } else if (matches.size() == 1) {
+                    throw error("File is outside the sparse checkout.");
+                }
+            }
+        }
+
+        Map<String, String> hashes = paths.parallelStream().collect(
+                Collectors.toConcurrentMap(path -> path, path -> Utils.writeBlob(join(CWD, path))));
+        for (String path : paths) {
+            index.addFile(path, hashes.get(path));
+        }
+    }
+
+    /** Returns the paths of the working files named by fileName, which may name
+     * a file, a directory, or be a glob pattern. */
+    private static List<String> expandPath(String fileName) {
         File file = join(CWD, fileName);
-        if (!file.exists()) {
-            Utils.message("File does not exist.");
-            System.exit(0);
+        if (file.isFile()) {
+            return List.of(workingPath(file));
+        } else if (file.isDirectory()) {
+            return workingFilesUnder(file);
+        } else if (!fileName.matches(".*[*?\\[{].*")) {
+            return List.of();
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + fileName);
+        List<String> matches = new ArrayList<>();
+        for (String path : workingFilesUnder(CWD)) {
+            if (matcher.matches(Paths.get(path))) {
+                matches.add(path);
+            }
         }
+        return matches;
+    }
+
+    /** Returns the path of file relative to the working directory, with '/'
+     * separating its components. */
+    static String workingPath(File file) {
+        String path = CWD.toPath().relativize(file.toPath().toAbsolutePath().normalize()).toString();
+        return path.replace(File.separatorChar, '/');
+    }
 
-        String fileContents = Utils.readContentsAsString(file);
-        String hash = Utils.sha1(fileContents);
-        File blob = getFileFromHash(hash);
-        Index index = Utils.readObject(INDEX, Index.class);
+    /** Returns the working paths of all plain files under dir, excluding the
+     * .gitlet directory and the directories outside the sparse checkout. */
+    static List<String> workingFilesUnder(File dir) {
+        List<String> paths = new ArrayList<>();
+        try {
+            Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+                    return path.toAbsolutePath().normalize().equals(GITLET_DIR.toPath())
+                            || !Sparse.includesDirectory(workingPath(path.toFile()))
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
 
-        index.addFile(fileName, hash);
-        writeContents(blob, fileContents);
-        Utils.writeObject(INDEX, index);
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        paths.add(workingPath(path.toFile()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return paths;
     }
 
     /** Remove a file from the staging area.
@@ -88,17 +198,29 @@ public class Repository {
      * @param fileName Name of the file to be removed.
      */
     public static void rm(String fileName) {
+        Index index = readIndex();
+        if (rmFile(index, fileName)) {
+            writeIndex(index);
+        }
+    }
+
+    /** Stages the removal of fileName in index and deletes its working file,
+     * as rm does, without writing the index. Returns whether index was
+     * changed. */
+    static boolean rmFile(Index index, String fileName) {
         File file = join(CWD, fileName);
-        Index index = Utils.readObject(INDEX, Index.class);
-        if (index.isTracked(fileName)) {
+        if (!Sparse.includes(workingPath(file))) {
+            throw error("File is outside the sparse checkout.");
+        } else if (index.isTracked(fileName)) {
             index.rmFile(fileName);
             if (file.exists()) {
                 Utils.restrictedDelete(file);
             }
-            Utils.writeObject(INDEX, index);
+            return true;
         } else if (!file.exists()) {
             Utils.message("File does not exist.");
         }
+        return false;
     }
 
     /** Create a new commit with all the changed files in the staging area.
@@ -106,63 +228,312 @@ public class Repository {
      * @param commitMessage Message associated with the commit.
      */
     public static void commit(String commitMessage) {
-        Index index = Utils.readObject(INDEX, Index.class);
-        if (!index.changesStaged()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
-        }
-
-        String branch = Utils.readContentsAsString(HEAD);
+        Index index = readIndex();
+        String branch = Journal.readString(HEAD);
         String prevCommit = getHashFromBranch(branch);
-        Tree tree = new Tree(index.getStagedChanges());
-        writeObject(getFileFromHash(tree.hash), tree);
-        Commit commit = new Commit(prevCommit, tree.hash, commitMessage);
-        writeObject(getFileFromHash(commit.hash), commit);
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        Commit commit = makeCommit(index, prevCommit, graph.tree(graph.indexOf(prevCommit)),
+                                   commitMessage);
+        graph.add(commit);
         File branchFile = join(REFS_DIR, branch);
-        Utils.writeContents(branchFile, commit.hash);
-        index.commitStaged();
-        Utils.writeObject(INDEX, index);
+        Journal.write(branchFile, commit.hash.getBytes(StandardCharsets.UTF_8));
+        BranchBitmaps.reachable(graph, branch);
+        new MessageIndex(MessageIndex.INDEX_DIR).update(graph);
+        writeIndex(index);
         updateIndex();
     }
 
+    /** Stores a commit of the changes staged in index, with parent the
+     * commit with hash parent and Tree with hash parentTree, and records in
+     * index that they are committed. Returns the commit, which is not added
+     * to the commit graph or to any branch.
+     *
+     * @param commitMessage Message associated with the commit.
+     */
+    static Commit makeCommit(Index index, String parent, String parentTree,
+                             String commitMessage) {
+        Map<String, String> changes = index.getStagedChanges();
+        changes.putAll(index.getStagedRemovals());
+        if (changes.isEmpty()) {
+            throw error("No changes added to the commit.");
+        }
+        String tree = Tree.update(parentTree, changes);
+        Commit commit = new Commit(parent, tree, commitMessage);
+        writeObject(commit.hash, commit);
+        index.commitStaged();
+        return commit;
+    }
+
     /** Update the working directory versions of all files. */
     public static void updateIndex() {
-        Index index = Utils.readObject(INDEX, Index.class);
-        Set<String> filesToUpdate = index.getFiles();
-        filesToUpdate.addAll(plainFilenamesIn(CWD));
+        Index index = readIndex();
+        long scanTime = System.currentTimeMillis();
+        Set<String> changed = FsMonitor.changedPaths(index);
+        Set<String> filesToUpdate;
+        if (changed == null) {
+            filesToUpdate = index.getFiles();
+            filesToUpdate.addAll(plainFilenamesIn(CWD));
+        } else {
+            filesToUpdate = new HashSet<>();
+            for (String path : changed) {
+                if (index.contains(path) || path.indexOf('/') < 0 && join(CWD, path).isFile()) {
+                    filesToUpdate.add(path);
+                }
+                filesToUpdate.addAll(index.filesUnder(path));
+            }
+        }
         for (String fileName : filesToUpdate) {
             File file = join(CWD, fileName);
-            if (!file.exists()) {
+            long[] stat = Utils.statFile(file);
+            if (stat == null) {
                 index.updateFile(fileName, "");
+            } else if (!index.isStatClean(fileName, stat)) {
+                String hash = Utils.sha1File(file);
+                index.updateFile(fileName, hash, stat);
+            }
+        }
+        index.setTimestamp(scanTime);
+        refreshIndex(index);
+    }
+
+    /** Returns the index of the repository. The index is kept in memory
+     * between commands run by the same process, and only read again when the
+     * index file has changed. */
+    static Index readIndex() {
+        long[] stat = Utils.statFile(INDEX);
+        if (cachedIndex == null || !Arrays.equals(stat, cachedIndexStat)) {
+            byte[] pending = Journal.pending(INDEX);
+            cachedIndex = pending == null ? Index.read(INDEX) : Index.read(ByteBuffer.wrap(pending));
+            cachedIndexStat = stat;
+        }
+        return cachedIndex;
+    }
+
+    /** Writes index to the index file of the repository, as part of the
+     * journal transaction of the running command. */
+    static void writeIndex(Index index) {
+        Journal.write(INDEX, index.toBytes());
+        cachedIndex = index;
+        cachedIndexStat = Utils.statFile(INDEX);
+    }
+
+    /** Writes index to the index file of the repository, when it only has
+     * new working versions and stat information, which need not be durable. */
+    static void refreshIndex(Index index) {
+        Journal.refresh(INDEX, index.toBytes());
+        cachedIndex = index;
+        cachedIndexStat = Utils.statFile(INDEX);
+    }
+
+    /** Forgets all repository state kept in memory, so that it is read again
+     * from disk. Used after a command fails partway through. */
+    static void clearCaches() {
+        cachedIndex = null;
+        cachedIndexStat = null;
+        Config.reset();
+        CommitGraph.reset();
+        Pack.reset();
+        resetObjectStore();
+        Shallow.reset();
+        Sparse.reset();
+    }
+
+    /** Returns the hash of the head commit of the current branch. */
+    static String headCommit() {
+        return getHashFromBranch(Journal.readString(HEAD));
+    }
+
+    /** Returns the position in graph of the commit whose id is id, or begins
+     * with id if id is abbreviated. */
+    private static int findCommit(CommitGraph graph, String id) {
+        if (id.length() == UID_LENGTH) {
+            int i = graph.indexOf(id);
+            if (i >= 0) {
+                return i;
+            }
+        } else if (!id.isEmpty()) {
+            for (int i = graph.size() - 1; i >= 0; i -= 1) {
+                if (graph.hash(i).startsWith(id)) {
+                    return i;
+                }
+            }
+        }
+        throw error("No commit with that id exists.");
+    }
+
+    /** Check out a file as it is in a commit. The new version of the file is
+     * not staged.
+     *
+     * @param commitId Id of the commit to take the file from, possibly
+     *                 abbreviated, or null for the head commit.
+     * @param fileName Name of the file to check out.
+     */
+    public static void checkoutFile(String commitId, String fileName) {
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        int commit = commitId == null ? graph.indexOf(headCommit()) : findCommit(graph, commitId);
+        String hash = Tree.lookup(graph.tree(commit), fileName);
+        if (hash.isEmpty()) {
+            throw error("File does not exist in that commit.");
+        } else if (!Sparse.includes(fileName)) {
+            throw error("File is outside the sparse checkout.");
+        }
+        File file = join(CWD, fileName);
+        copyObjectTo(hash, file);
+        Index index = readIndex();
+        index.updateFile(fileName, hash, statFile(file));
+        writeIndex(index);
+    }
+
+    /** Check out the head commit of a branch and make it the current branch.
+     *
+     * @param branch Name of the branch to check out.
+     */
+    public static void checkoutBranch(String branch) {
+        if (!Journal.exists(join(REFS_DIR, branch))) {
+            throw error("No such branch exists.");
+        }
+        if (branch.equals(Journal.readString(HEAD))) {
+            throw error("No need to checkout the current branch.");
+        }
+        switchTo(getHashFromBranch(branch));
+        Journal.write(HEAD, branch.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Check out a commit and make it the head of the current branch.
+     *
+     * @param commitId Id of the commit, possibly abbreviated.
+     */
+    public static void reset(String commitId) {
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        String commit = graph.hash(findCommit(graph, commitId));
+        switchTo(commit);
+        Journal.write(join(REFS_DIR, Journal.readString(HEAD)), commit.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Replace the files of the head commit in the working directory with
+     * those of the commit with hash target, and clear the staging area.
+     *
+     * Only files that differ between the trees of the two commits, or whose
+     * working version differs from the head commit, are written or deleted.
+     * The blobs are copied out of the object store in parallel, and the
+     * index is updated once at the end.
+     */
+    private static void switchTo(String target) {
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        switchTrees(graph.tree(graph.indexOf(headCommit())), graph.tree(graph.indexOf(target)));
+    }
+
+    /** Check out the head commit into a working directory that has nothing
+     * checked out yet, such as that of a new clone. */
+    static void checkoutHead() {
+        writeIndex(new Index());
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        switchTrees("", graph.tree(graph.indexOf(headCommit())));
+    }
+
+    /** Replace the files of the Tree with hash from in the working directory
+     * with those of the Tree with hash to, and clear the staging area, as
+     * switchTo does. Only files in the sparse checkout are compared. */
+    private static void switchTrees(String from, String to) {
+        Index index = readIndex();
+        Map<String, String> changes = new TreeMap<>();
+        Tree.diff(from, to, "", changes, Sparse::includesDirectory);
+        Map<String, String> writes = index.getChangedSinceCommit();
+        Set<String> checkedDirs = new HashSet<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            String hash = change.getValue();
+            if (hash.isEmpty()) {
+                writes.remove(path);
+            } else if (isInTheWay(path, index, changes, checkedDirs)) {
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+            } else if (!hash.equals(index.getWorkingVersion(path))) {
+                writes.put(path, hash);
             } else {
-                String fileContents = Utils.readContentsAsString(file);
-                String hash = Utils.sha1(fileContents);
-                index.updateFile(fileName, hash);
+                writes.remove(path);
+            }
+        }
+
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue().isEmpty()) {
+                deleteWorkingFile(change.getKey());
+            }
+        }
+        writes.entrySet().parallelStream().forEach(
+            write -> copyObjectTo(write.getValue(), join(CWD, write.getKey())));
+        index.checkout(changes);
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+            String path = write.getKey();
+            index.updateFile(path, write.getValue(), statFile(join(CWD, path)));
+        }
+        writeIndex(index);
+    }
+
+    /** Returns whether writing the file at path, in a checkout that applies
+     * changes, would overwrite or delete a file that is not tracked: an
+     * untracked file at path, a file that changes does not remove at one of
+     * the parent directories of path, or, if path is a directory, any file
+     * under it that changes does not remove. The parent directories already
+     * checked are kept in checkedDirs. */
+    private static boolean isInTheWay(String path, Index index, Map<String, String> changes,
+                                      Set<String> checkedDirs) {
+        File file = join(CWD, path);
+        if (file.isFile()) {
+            return !index.isTracked(path);
+        } else if (file.isDirectory()) {
+            for (String under : workingFilesUnder(file)) {
+                if (!"".equals(changes.get(under))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            String dir = path.substring(0, slash);
+            if (!checkedDirs.add(dir)) {
+                break;
+            } else if (join(CWD, dir).isFile() && !"".equals(changes.get(dir))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Delete the working file at path, along with any directories left
+     * empty by its removal. */
+    private static void deleteWorkingFile(String path) {
+        File file = join(CWD, path);
+        file.delete();
+        for (File dir = file.getParentFile(); !dir.equals(CWD); dir = dir.getParentFile()) {
+            String[] remaining = dir.list();
+            if (remaining == null || remaining.length > 0 || !dir.delete()) {
+                break;
             }
         }
-        Utils.writeObject(INDEX, index);
     }
 
     /** Returns a list of all the branches in this repository. */
     public static List<String> getBranches() {
-        return Utils.plainFilenamesIn(REFS_DIR);
+        return Journal.filesIn(REFS_DIR);
     }
 
     /** Get the commit hash from the branch associated with branchName. */
     public static String getHashFromBranch(String branchName) {
         File branch = Utils.join(REFS_DIR, branchName);
-        return readContentsAsString(branch);
+        return Journal.readString(branch);
     }
 
-    /** Print the status of files in the working directory relative to the repository. */
+    /** Print the status of files in the working directory relative to the repository.
+     * With the status.renames setting "true", an untracked file that a deleted
+     * file was renamed to is listed only as the rename. */
     public static void status() {
-        String head = Utils.readContentsAsString(HEAD);
+        String head = Journal.readString(HEAD);
         System.out.println("=== Branches ===");
         for (String branch : getBranches()) {
             System.out.println(branch.equals(head) ? "*" + branch : branch);
         }
 
-        Index index = Utils.readObject(INDEX, Index.class);
+        Index index = readIndex();
         System.out.println("\n=== Staged Files ===");
         for (String file : index.getStagedChanges().keySet()) {
             System.out.println(file);
@@ -174,30 +545,336 @@ public class Repository {
         }
 
         System.out.println("\n=== Modifications Not Staged For Commit ===");
+        Map<String, String> renamedTo = renamedTo(index, "status.renames");
         Map<String, String> unstagedChanges = index.getUnstagedChanges();
         for (String file : unstagedChanges.keySet()) {
-            System.out.println(file + (unstagedChanges.get(file).isEmpty() ? " (deleted)" : " (modified)"));
+            if (renamedTo.containsKey(file)) {
+                System.out.println(file + " (renamed to " + renamedTo.get(file) + ")");
+            } else {
+                System.out.println(file + (unstagedChanges.get(file).isEmpty() ? " (deleted)" : " (modified)"));
+            }
         }
 
         System.out.println("\n=== Untracked Files ==");
         for (String file : index.getUntrackedFiles().keySet()) {
-            System.out.println(file);
+            if (!renamedTo.containsValue(file)) {
+                System.out.println(file);
+            }
+        }
+    }
+
+    /** Returns a map from the deleted files of index to the untracked files
+     * they were renamed to, if the setting named setting is "true", or an
+     * empty map if it is not. */
+    private static Map<String, String> renamedTo(Index index, String setting) {
+        Map<String, String> renamedTo = new TreeMap<>();
+        if (Config.get(setting, "false").equals("true")) {
+            for (Map.Entry<String, String> rename : index.getRenames().entrySet()) {
+                renamedTo.put(rename.getValue(), rename.getKey());
+            }
         }
+        return renamedTo;
     }
 
     /** Print a log of all commits in the current branch, in reverse order. */
     public static void log() {
-        String head = Utils.readContentsAsString(HEAD);
-        String commitHash = getHashFromBranch(head);
-        while (!commitHash.isEmpty()) {
-            File commitFile = Utils.getFileFromHash(commitHash);
-            Commit currentCommit = Utils.readObject(commitFile, gitlet.Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + currentCommit.hash);
-            System.out.println("Date: " + currentCommit.timestamp);
-            System.out.println(currentCommit.message);
-            System.out.println();
-            commitHash = currentCommit.parent;
+        String head = Journal.readString(HEAD);
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        for (int i = graph.indexOf(getHashFromBranch(head)); i >= 0; i = graph.parent(i)) {
+            printLogEntry(graph, i);
+        }
+    }
+
+    /** Print a log of every commit ever made, in no particular order. */
+    public static void globalLog() {
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        for (int i = graph.size() - 1; i >= 0; i -= 1) {
+            printLogEntry(graph, i);
+        }
+    }
+
+    /** Print the ids of all commits with the given commit message.
+     *
+     * @param commitMessage The message, or part of it.
+     * @param exact Whether to print only commits whose whole message is
+     *              commitMessage, rather than any that contain it.
+     */
+    public static void find(String commitMessage, boolean exact) {
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        int[] found = new MessageIndex(MessageIndex.INDEX_DIR).find(graph, commitMessage, exact);
+        if (found.length == 0) {
+            throw error("Found no commit with that message.");
+        }
+        for (int i : found) {
+            System.out.println(graph.hash(i));
+        }
+    }
+
+    /** Print the log entry of the commit at position i of graph. */
+    private static void printLogEntry(CommitGraph graph, int i) {
+        System.out.println("===");
+        System.out.println("commit " + graph.hash(i));
+        System.out.println("Date: " + graph.timestamp(i));
+        System.out.println(graph.message(i));
+        System.out.println();
+    }
+
+    /** Print the value of a repository setting, or change it.
+     *
+     * @param key Name of the setting.
+     * @param value New value of the setting, or null to print the current value.
+     */
+    public static void config(String key, String value) {
+        if (value == null) {
+            String current = Config.get(key, null);
+            if (current != null) {
+                System.out.println(current);
+            }
+            return;
+        }
+        if (key.equals("format")) {
+            throw error("The format of a repository cannot be changed.");
+        } else if (key.equals("compression")) {
+            try {
+                compressionLevel(value);
+            } catch (IllegalArgumentException excp) {
+                throw error("Invalid compression setting.");
+            }
+        } else if (key.equals("objectstore")) {
+            changeObjectStore(value);
+            return;
+        }
+        Config.set(key, value);
+    }
+
+    /** Makes SETTING the objectstore setting, moving the objects of the
+     * current object store into the one it chooses. The objects are copied,
+     * MOVE_BATCH per transaction, and the setting is made durable before the
+     * old copies are deleted, so every object can be found throughout. */
+    private static void changeObjectStore(String setting) {
+        ObjectStore to;
+        try {
+            to = ObjectStore.open(setting, OBJECTS_DIR);
+        } catch (IllegalArgumentException excp) {
+            throw error("Invalid object store setting.");
+        }
+        ObjectStore from = objectStore();
+        List<String> moved = new ArrayList<>();
+        for (String hash : from.hashes()) {
+            if (to.contains(hash)) {
+                continue;
+            }
+            try (InputStream in = from.open(hash)) {
+                to.write(hash, in.readAllBytes());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            moved.add(hash);
+            if (moved.size() % MOVE_BATCH == 0) {
+                Journal.commit();
+                Journal.begin();
+            }
+        }
+        Config.set("objectstore", setting);
+        Journal.commit();
+        Journal.begin();
+        resetObjectStore();
+        for (String hash : moved) {
+            from.delete(hash);
+        }
+    }
+
+    /** Print the changes in the working directory that are not staged, as
+     * unified diffs between the staged and working versions of each file.
+     * With no file names and the diff.renames setting "true", a deleted file
+     * renamed to an untracked one is shown as a rename, diffed against the
+     * file it was renamed to.
+     *
+     * @param fileNames Names of the files to compare, or none to compare
+     *                  every file with unstaged changes.
+     */
+    public static void diff(String... fileNames) {
+        Index index = readIndex();
+        Collection<String> files = fileNames.length == 0
+                ? index.getUnstagedChanges().keySet() : Arrays.asList(fileNames);
+        Map<String, String> renamedTo = fileNames.length == 0
+                ? renamedTo(index, "diff.renames") : Map.of();
+        OutputStream out = new BufferedOutputStream(System.out, BUFFER_SIZE);
+        try {
+            for (String file : files) {
+                if (!index.isTracked(file)) {
+                    throw error("File is not tracked.");
+                }
+                String staged = index.getStagedVersion(file);
+                String working = index.getWorkingVersion(file);
+                if (staged.equals(working)) {
+                    continue;
+                } else if (renamedTo.containsKey(file)) {
+                    String target = renamedTo.get(file);
+                    out.write(("rename from " + file + "\nrename to " + target + "\n")
+                              .getBytes(StandardCharsets.UTF_8));
+                    Diff.unified(() -> openObject(staged), "a/" + file,
+                                 () -> Files.newInputStream(join(CWD, target).toPath()),
+                                 "b/" + target, out);
+                    continue;
+                }
+                Diff.Source stagedSource = staged.isEmpty()
+                        ? InputStream::nullInputStream : () -> openObject(staged);
+                Diff.Source workingSource = working.isEmpty()
+                        ? InputStream::nullInputStream
+                        : () -> Files.newInputStream(join(CWD, file).toPath());
+                Diff.unified(stagedSource, staged.isEmpty() ? "/dev/null" : "a/" + file,
+                             workingSource, working.isEmpty() ? "/dev/null" : "b/" + file,
+                             out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            try {
+                out.flush();
+            } catch (IOException excp) {
+                System.err.println(excp.getMessage());
+            }
+        }
+    }
+
+    /** Print debugging information about the repository.
+     *
+     * @param topic What to print. "stats" prints the counters of the object
+     *              cache of this process.
+     */
+    public static void debug(String topic) {
+        if (!topic.equals("stats")) {
+            throw error("No such debug topic.");
+        }
+        System.out.println(OBJECT_CACHE.stats());
+    }
+
+    /** Gather all objects of the object store into the pack, then delete
+     * them from the object store. Versions of the same file are stored as
+     * deltas against each other. */
+    public static void pack() {
+        ObjectStore store = objectStore();
+        Set<String> hashes = store.hashes();
+        Pack.repositoryPack().append(store, hashes, blobPaths());
+        for (String hash : hashes) {
+            store.delete(hash);
+        }
+    }
+
+    /** Returns a map of the hashes of the blobs of every commit, and of the
+     * staged versions in the index, to the path of a file each is a version
+     * of, taken from the newest commit that has it. */
+    private static Map<String, String> blobPaths() {
+        Map<String, String> paths = new HashMap<>();
+        for (Map.Entry<String, String> staged : readIndex().getStagedChanges().entrySet()) {
+            paths.put(staged.getValue(), staged.getKey());
+        }
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        Set<String> seen = new HashSet<>();
+        for (int i = graph.size() - 1; i >= 0; i -= 1) {
+            Tree.paths(graph.tree(i), "", paths, seen);
+        }
+        return paths;
+    }
+
+    /** Delete every object that is not reachable from a branch or from the
+     * staged and committed versions in the index. */
+    public static void gc() {
+        GarbageCollector.collect();
+    }
+
+    /** Cut the history of the repository to the last commits of each branch.
+     *
+     * @param depth Number of commits to keep on each branch, counting its
+     *              head commit.
+     */
+    public static void shallow(int depth) {
+        Shallow.truncate(depth);
+    }
+
+    /** Create a repository in the current directory from the last commits of
+     * another one, and check out its current branch.
+     *
+     * @param source Working directory of the repository to clone.
+     * @param depth Number of commits to copy from each branch, counting its
+     *              head commit.
+     */
+    public static void cloneShallow(File source, int depth) {
+        Shallow.cloneFrom(source, depth);
+    }
+
+    /** Print the directories of the sparse checkout, or check out only the
+     * files in the given directories. Files outside the new sparse checkout
+     * are deleted from the working directory and dropped from the index, and
+     * files of the head commit inside it that are not checked out yet are
+     * written. Staged changes inside it are kept.
+     *
+     * @param dirs Directories to check out, or null to print the current
+     *             ones. An empty array checks out every file again.
+     */
+    public static void sparse(String... dirs) {
+        if (dirs == null) {
+            for (String dir : Sparse.patterns()) {
+                System.out.println(dir);
+            }
+            return;
+        }
+        Set<String> cone = new TreeSet<>();
+        for (String dir : dirs) {
+            String path = workingPath(join(CWD, dir));
+            if (path.isEmpty() || path.equals("..") || path.startsWith("../")) {
+                throw error("Incorrect operands.");
+            }
+            cone.add(path);
+        }
+
+        Index index = readIndex();
+        List<String> excluded = new ArrayList<>();
+        for (String path : index.getFiles()) {
+            if (!Sparse.includesDirectory(cone, Sparse.parentOf(path))) {
+                if (index.isStaged(path) || index.isRemoved(path) || index.hasUnstagedChanges(path)) {
+                    throw error("A file outside the new sparse checkout has uncommitted changes; "
+                                + "commit or check it out first.");
+                }
+                excluded.add(path);
+            }
+        }
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        Map<String, String> headFiles = new TreeMap<>();
+        Tree.diff("", graph.tree(graph.indexOf(headCommit())), "", headFiles,
+                  dir -> Sparse.includesDirectory(cone, dir));
+        headFiles.keySet().removeAll(index.getFiles());
+        for (String path : headFiles.keySet()) {
+            if (join(CWD, path).exists()) {
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+        }
+
+        Sparse.write(cone);
+        for (String path : excluded) {
+            deleteWorkingFile(path);
+            index.forget(path);
+        }
+        headFiles.entrySet().parallelStream().forEach(
+            file -> copyObjectTo(file.getValue(), join(CWD, file.getKey())));
+        for (Map.Entry<String, String> file : headFiles.entrySet()) {
+            String path = file.getKey();
+            index.addCheckedOut(path, file.getValue(), statFile(join(CWD, path)));
+        }
+        writeIndex(index);
+    }
+
+    /** Deletes the commit graph, and the indexes that refer to commits by
+     * their positions in it, and builds the graph again from the branches. */
+    static void rebuildCommitGraph() {
+        for (File file : GRAPH_DIR.listFiles()) {
+            file.delete();
         }
+        GRAPH_DIR.delete();
+        BranchBitmaps.clear();
+        MessageIndex.clear();
+        CommitGraph.reset();
+        CommitGraph.repositoryGraph();
     }
 }
@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** A batch of add, rm, commit and branch operations on the current
+ * repository, for programs such as importers that run many of them in a
+ * row. Each command run on its own reads the index, HEAD and refs, scans
+ * the working directory, and writes everything it changed with an fsync. A
+ * session reads them once when it is opened, and its operations change them
+ * in memory only, as do the objects they store, up to Utils.BATCH_LIMIT
+ * bytes each. flush then appends those objects to the pack in one write and
+ * the new commits to the commit graph, and writes the refs and index to the
+ * journal as one record, with one fsync for each.
+ *
+ * Nothing is written unless flush is called: close drops everything done
+ * since the last flush, as abort does, so that a session left by an
+ * exception does not write out a batch cut off part way through.
+ *
+ * Operations behave as the commands of the same names, including the errors
+ * they throw, except that the working directory is not scanned again after
+ * a commit: the session takes itself to be the only writer of the
+ * repository while it is open. A failed operation leaves the state of the
+ * session as it was, so the batch can go on.
+ *
+ * Usage:
+ *     try (RepositorySession session = RepositorySession.open()) {
+ *         session.add("a.txt");
+ *         session.commit("Import a");
+ *         session.flush();
+ *     }
+ *
+ * @author Eve Stroud
+ */
+public class RepositorySession implements AutoCloseable {
+
+    /** The index, changed in memory by each operation. */
+    private final Index index;
+    /** Name of the current branch. */
+    private final String head;
+    /** Maps the name of each branch to the hash of its head commit. */
+    private final Map<String, String> branches = new HashMap<>();
+    /** Maps the hashes of commits whose Trees are known to those Trees. */
+    private final Map<String, String> trees = new HashMap<>();
+    /** Commits made since the last flush, oldest first. */
+    private final List<Commit> commits = new ArrayList<>();
+    /** Names of the branches made or moved since the last flush. */
+    private final Set<String> changedBranches = new TreeSet<>();
+    /** True once the session has ended. */
+    private boolean closed;
+
+    /** A session reading the state of the current repository. */
+    private RepositorySession() {
+        Repository.updateIndex();
+        index = Repository.readIndex();
+        head = Journal.readString(Repository.HEAD);
+        for (String branch : Repository.getBranches()) {
+            branches.put(branch, Repository.getHashFromBranch(branch));
+        }
+    }
+
+    /** Opens a session on the repository in the current directory. */
+    public static RepositorySession open() {
+        if (!Repository.GITLET_DIR.exists()) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
+        Journal.recover();
+        Journal.begin();
+        try {
+            RepositorySession session = new RepositorySession();
+            beginBatch();
+            return session;
+        } catch (RuntimeException excp) {
+            Journal.abort();
+            throw excp;
+        }
+    }
+
+    /** Stages the files named by FILENAMES, as the add command does. */
+    public void add(String... fileNames) {
+        Repository.addFiles(index, fileNames);
+    }
+
+    /** Stages the removal of FILENAME, as the rm command does. */
+    public void rm(String fileName) {
+        Repository.rmFile(index, fileName);
+    }
+
+    /** Commits the staged changes to the current branch with message
+     *  MESSAGE, as the commit command does, and returns the hash of the new
+     *  commit. */
+    public String commit(String message) {
+        String parent = branches.get(head);
+        String parentTree = trees.get(parent);
+        if (parentTree == null) {
+            CommitGraph graph = CommitGraph.repositoryGraph();
+            parentTree = graph.tree(graph.indexOf(parent));
+        }
+        Commit commit = Repository.makeCommit(index, parent, parentTree, message);
+        commits.add(commit);
+        trees.put(commit.hash, commit.tree);
+        branches.put(head, commit.hash);
+        changedBranches.add(head);
+        return commit.hash;
+    }
+
+    /** Makes a new branch named NAME at the head commit of the current
+     *  branch, as the branch command does. */
+    public void branch(String name) {
+        if (branches.containsKey(name)) {
+            throw error("A branch with that name already exists.");
+        }
+        branches.put(name, branches.get(head));
+        changedBranches.add(name);
+    }
+
+    /** Writes out everything done since the session was opened or last
+     *  flushed, durably, and goes on with the session. */
+    public void flush() {
+        if (closed) {
+            throw error("The session has ended.");
+        }
+        write();
+        Journal.commit();
+        Journal.begin();
+        beginBatch();
+    }
+
+    /** Ends the session, dropping everything done since it was opened or
+     *  last flushed, unless it has ended already. */
+    @Override
+    public void close() {
+        abort();
+    }
+
+    /** Drops everything done since the session was opened or last flushed,
+     *  and ends the session, unless it has ended already. Objects too large
+     *  to be held in memory are left for gc. */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        endBatch();
+        Journal.abort();
+        Repository.clearCaches();
+    }
+
+    /** Appends the new objects to the pack, adds the new commits to the
+     *  commit graph, and writes the refs and index to the journal
+     *  transaction of the session. */
+    private void write() {
+        Pack.repositoryPack().appendStored(endBatch());
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        graph.add(commits);
+        commits.clear();
+        for (String branch : changedBranches) {
+            Journal.write(join(Repository.REFS_DIR, branch),
+                          branches.get(branch).getBytes(StandardCharsets.UTF_8));
+        }
+        Repository.writeIndex(index);
+        for (String branch : changedBranches) {
+            BranchBitmaps.reachable(graph, branch);
+        }
+        new MessageIndex(MessageIndex.INDEX_DIR).update(graph);
+        changedBranches.clear();
+    }
+}
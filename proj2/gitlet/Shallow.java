@@ -0,0 +1,263 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/** The shallow boundary of the current repository: the commits whose parents
+ * are not kept, so that history walks stop at them. The boundary is stored
+ * in .gitlet/shallow, one commit hash per line; a repository without that
+ * file keeps its whole history.
+ *
+ * Boundary commits are added to the commit graph with no parents, so log,
+ * split points, the reachability bitmaps and gc, which all walk the graph,
+ * stop at the boundary without checking it. Only building the graph from
+ * Commit objects needs to know the boundary, so that it does not read
+ * parents that are not stored.
+ *
+ * A repository is made shallow by cutting its history to the last commits
+ * of each branch, after which gc deletes the rest, or is seeded with the
+ * last commits of another repository by clone. Either way, the commits kept
+ * are those at most DEPTH commits back from the head commit of a branch,
+ * counting the head commit as 1.
+ *
+ * @author Eve Stroud
+ */
+class Shallow {
+
+    /** The boundary file of the current repository. */
+    static final File SHALLOW = join(Repository.GITLET_DIR, "shallow");
+
+    /** Hashes of the boundary commits, or null if not read yet. */
+    private static Set<String> boundary;
+
+    /** Returns whether the commit with hash HASH is a boundary commit. */
+    static boolean isBoundary(String hash) {
+        if (boundary == null) {
+            boundary = new HashSet<>();
+            if (Journal.exists(SHALLOW)) {
+                for (String line : Journal.readString(SHALLOW).split("\n")) {
+                    if (!line.isEmpty()) {
+                        boundary.add(line);
+                    }
+                }
+            }
+        }
+        return boundary.contains(hash);
+    }
+
+    /** Forgets the boundary, so it is read again on next use. */
+    static void reset() {
+        boundary = null;
+    }
+
+    /** Makes the commits with hashes COMMITS the boundary. */
+    private static void write(Set<String> commits) {
+        StringBuilder s = new StringBuilder();
+        for (String commit : new TreeSet<>(commits)) {
+            s.append(commit).append('\n');
+        }
+        Journal.write(SHALLOW, s.toString().getBytes(StandardCharsets.UTF_8));
+        boundary = new HashSet<>(commits);
+    }
+
+    /** Cuts the history of the current repository to the last DEPTH commits
+     *  of each branch, and builds the commit graph again without the rest.
+     *  The objects of the commits dropped are left for gc to delete. */
+    static void truncate(int depth) {
+        CommitGraph graph = CommitGraph.repositoryGraph();
+        Map<Integer, Integer> depths = new HashMap<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (String branch : Repository.getBranches()) {
+            int head = graph.indexOf(Repository.getHashFromBranch(branch));
+            if (depths.putIfAbsent(head, 1) == null) {
+                queue.add(head);
+            }
+        }
+        Set<String> cut = new HashSet<>();
+        while (!queue.isEmpty()) {
+            int i = queue.remove();
+            for (int parent : new int[] {graph.parent(i), graph.secondParent(i)}) {
+                if (parent < 0) {
+                    continue;
+                } else if (depths.get(i) == depth) {
+                    cut.add(graph.hash(i));
+                } else if (depths.putIfAbsent(parent, depths.get(i) + 1) == null) {
+                    queue.add(parent);
+                }
+            }
+        }
+        for (int i : depths.keySet()) {
+            if (isBoundary(graph.hash(i))) {
+                cut.add(graph.hash(i));
+            }
+        }
+        write(cut);
+        Repository.rebuildCommitGraph();
+    }
+
+    /** Creates a repository in the current directory holding the last DEPTH
+     *  commits of each branch of the repository in SOURCE, and checks out
+     *  the head commit of its current branch. */
+    static void cloneFrom(File source, int depth) {
+        File gitlet = join(source, ".gitlet");
+        if (!gitlet.isDirectory()) {
+            throw error("No Gitlet repository exists at that path.");
+        } else if (Repository.GITLET_DIR.exists()) {
+            throw error("A Gitlet version-control system already exists in the current directory.");
+        }
+        Repository.GITLET_DIR.mkdir();
+        Repository.OBJECTS_DIR.mkdir();
+        Repository.REFS_DIR.mkdir();
+        try {
+            new Copier(gitlet).copy(depth);
+            Repository.checkoutHead();
+        } catch (RuntimeException excp) {
+            deleteRecursively(Repository.GITLET_DIR.toPath());
+            Journal.abort();
+            Repository.clearCaches();
+            throw excp;
+        }
+    }
+
+    /** Copies commits and the objects they need from another repository. */
+    private static class Copier {
+        /** The .gitlet directory of the repository copied from. */
+        private final File source;
+        /** The pack of the repository copied from. */
+        private final Pack pack;
+        /** The settings of the repository copied from. */
+        private final Map<String, String> settings;
+        /** The object store of the repository copied from. */
+        private final ObjectStore store;
+        /** Hashes of the objects copied so far. */
+        private final Set<String> copied = new HashSet<>();
+
+        /** A copier from the repository whose .gitlet directory is SOURCE. */
+        Copier(File source) {
+            this.source = source;
+            pack = new Pack(join(source, "objects", "pack"));
+            settings = Config.read(join(source, "config"));
+            store = ObjectStore.open(settings.getOrDefault("objectstore", "loose"),
+                                     join(source, "objects"));
+        }
+
+        /** Copies the last DEPTH commits of each branch of the source, with
+         *  their Trees and blobs, then its boundary, branches and HEAD. The
+         *  objects are copied in their stored form, so the copy takes the
+         *  format setting of the source first. */
+        void copy(int depth) {
+            if (settings.containsKey("format")) {
+                Config.set("format", settings.get("format"));
+            }
+            Set<String> sourceBoundary = new HashSet<>();
+            File shallow = join(source, "shallow");
+            if (shallow.isFile()) {
+                for (String line : readContentsAsString(shallow).split("\n")) {
+                    sourceBoundary.add(line);
+                }
+            }
+            List<String> branches = plainFilenamesIn(join(source, "refs"));
+            Map<String, Integer> depths = new HashMap<>();
+            Deque<String> queue = new ArrayDeque<>();
+            for (String branch : branches) {
+                String head = readContentsAsString(join(source, "refs", branch));
+                if (depths.putIfAbsent(head, 1) == null) {
+                    queue.add(head);
+                }
+            }
+            Set<String> cut = new HashSet<>();
+            while (!queue.isEmpty()) {
+                String hash = queue.remove();
+                copyObject(hash);
+                Commit commit = readObject(hash, Commit.class);
+                copyTree(commit.tree);
+                for (String parent : new String[] {commit.parent, commit.mergeParent}) {
+                    if (parent.isEmpty()) {
+                        continue;
+                    } else if (depths.get(hash) == depth || sourceBoundary.contains(hash)) {
+                        cut.add(hash);
+                    } else if (depths.putIfAbsent(parent, depths.get(hash) + 1) == null) {
+                        queue.add(parent);
+                    }
+                }
+            }
+            if (!cut.isEmpty()) {
+                write(cut);
+            }
+            for (String branch : branches) {
+                Journal.write(join(Repository.REFS_DIR, branch), readContents(join(source, "refs", branch)));
+            }
+            Journal.write(Repository.HEAD, readContents(join(source, "head")));
+        }
+
+        /** Copies the Tree with hash HASH and everything in it, unless it is
+         *  empty or was copied already. */
+        private void copyTree(String hash) {
+            if (hash.isEmpty() || !copyObject(hash)) {
+                return;
+            }
+            Tree tree = Tree.read(hash);
+            for (String blob : tree.fileVersions()) {
+                if (copyObject(blob)) {
+                    for (String chunk : chunksOf(blob)) {
+                        copyObject(chunk);
+                    }
+                }
+            }
+            for (String subtree : tree.subtrees()) {
+                copyTree(subtree);
+            }
+        }
+
+        /** Copies the stored form of the object with hash HASH, returning
+         *  whether it was not copied already. */
+        private boolean copyObject(String hash) {
+            if (!copied.add(hash)) {
+                return false;
+            }
+            ByteBuffer packed = pack.contents(hash);
+            byte[] stored;
+            if (packed != null) {
+                stored = new byte[packed.remaining()];
+                packed.get(stored);
+            } else {
+                try (InputStream in = store.open(hash)) {
+                    if (in == null) {
+                        throw error("Object %s is missing from that repository.", hash);
+                    }
+                    stored = in.readAllBytes();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            writeStoredObject(hash, stored);
+            return true;
+        }
+    }
+
+    /** Deletes the file or directory at PATH and everything under it. */
+    private static void deleteRecursively(Path path) {
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
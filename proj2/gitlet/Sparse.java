@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** The sparse checkout of the current repository: the directories whose
+ * files are checked out, so that the working directory and the index only
+ * hold a slice of each commit. The directories are stored in
+ * .gitlet/sparse-checkout, one path per line; a repository without that file,
+ * or with an empty one, checks out every file.
+ *
+ * The files checked out, called the cone, are those in the working
+ * directory itself, those under one of the directories, and those directly
+ * in a directory that holds one of them, so that the path to each directory
+ * can be walked. Files outside the cone are kept out of the index, so the
+ * stat scan, status and commit never look at them, and Trees are diffed
+ * without reading the directories outside it. A commit only changes the
+ * files staged, so files outside the cone are carried over from its parent
+ * as they are.
+ *
+ * @author Eve Stroud
+ */
+class Sparse {
+
+    /** The sparse checkout file of the current repository. */
+    static final File SPARSE = join(Repository.GITLET_DIR, "sparse-checkout");
+
+    /** The directories of the cone, empty if every file is checked out, or
+     * null if not read yet. */
+    private static List<String> patterns;
+
+    /** Returns the directories of the cone, or an empty list if every file
+     *  is checked out. */
+    static List<String> patterns() {
+        if (patterns == null) {
+            patterns = new ArrayList<>();
+            if (Journal.exists(SPARSE)) {
+                for (String line : Journal.readString(SPARSE).split("\n")) {
+                    if (!line.isEmpty()) {
+                        patterns.add(line);
+                    }
+                }
+            }
+        }
+        return patterns;
+    }
+
+    /** Forgets the directories of the cone, so they are read again on next
+     *  use. */
+    static void reset() {
+        patterns = null;
+    }
+
+    /** Makes DIRS the directories of the cone, or checks out every file if
+     *  DIRS is empty, which leaves the sparse checkout file empty. */
+    static void write(Collection<String> dirs) {
+        StringBuilder s = new StringBuilder();
+        for (String dir : dirs) {
+            s.append(dir).append('\n');
+        }
+        Journal.write(SPARSE, s.toString().getBytes(StandardCharsets.UTF_8));
+        patterns = new ArrayList<>(dirs);
+    }
+
+    /** Returns whether the file at working path PATH is in the cone. */
+    static boolean includes(String path) {
+        return includesDirectory(patterns(), parentOf(path));
+    }
+
+    /** Returns whether the files directly in the directory at working path
+     *  DIR are in the cone, which is also when DIR must be walked to find
+     *  them. The working directory itself is the empty path. */
+    static boolean includesDirectory(String dir) {
+        return includesDirectory(patterns(), dir);
+    }
+
+    /** Returns whether the files directly in the directory DIR are in the
+     *  cone of the directories PATTERNS. */
+    static boolean includesDirectory(Collection<String> patterns, String dir) {
+        if (patterns.isEmpty() || dir.isEmpty()) {
+            return true;
+        }
+        for (String pattern : patterns) {
+            if (pattern.equals(dir) || pattern.startsWith(dir + "/")
+                || dir.startsWith(pattern + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the working path of the directory holding the file at PATH. */
+    static String parentOf(String path) {
+        int split = path.lastIndexOf('/');
+        return split < 0 ? "" : path.substring(0, split);
+    }
+}
@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.util.BitSet;
+import java.util.PriorityQueue;
+
+/** Finds split points, the latest common ancestors of two commits, in a
+ * CommitGraph.
+ *
+ * Commits are visited from both commits at once, highest generation number
+ * first, marking each commit with the sides it can be reached from. A commit
+ * can only be reached through commits of greater generation, so by the time
+ * it is visited its marks are final, and the first commit marked from both
+ * sides is a common ancestor of greatest generation. Only commits of greater
+ * generation than the split point are ever visited, so the cost grows with
+ * the distance to the split point rather than with the length of the history.
+ *
+ * Commits are added to the graph after their parents, so every visited
+ * commit has a position at most the larger of the two starting positions.
+ * Marks are kept in bitsets indexed by that position minus the position of
+ * each commit, the number of commits added to the graph after it. This is
+ * insertion order, not distance in the history: the bitsets span every
+ * commit added since the earliest one visited, which is only close to the
+ * part of the graph visited when commits were added in the order they were
+ * made.
+ *
+ * @author Eve Stroud
+ */
+class SplitPoint {
+
+    /** Returns the position of a latest common ancestor of the commits at
+     *  positions A and B of GRAPH, or -1 if they have none. */
+    static int find(CommitGraph graph, int a, int b) {
+        if (a < 0 || b < 0) {
+            return -1;
+        } else if (a == b) {
+            return a;
+        }
+        int top = Math.max(a, b);
+        BitSet fromA = new BitSet();
+        BitSet fromB = new BitSet();
+        BitSet queued = new BitSet();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            int cmp = Integer.compare(graph.generation(y), graph.generation(x));
+            return cmp != 0 ? cmp : Integer.compare(y, x);
+        });
+        fromA.set(top - a);
+        fromB.set(top - b);
+        queued.set(top - a);
+        queued.set(top - b);
+        queue.add(a);
+        queue.add(b);
+
+        while (!queue.isEmpty()) {
+            int commit = queue.poll();
+            boolean reachedFromA = fromA.get(top - commit);
+            boolean reachedFromB = fromB.get(top - commit);
+            if (reachedFromA && reachedFromB) {
+                return commit;
+            }
+            for (int parent : new int[] {graph.parent(commit), graph.secondParent(commit)}) {
+                if (parent < 0) {
+                    continue;
+                }
+                int bit = top - parent;
+                if (reachedFromA) {
+                    fromA.set(bit);
+                }
+                if (reachedFromB) {
+                    fromB.set(bit);
+                }
+                if (!queued.get(bit)) {
+                    queued.set(bit);
+                    queue.add(parent);
+                }
+            }
+        }
+        return -1;
+    }
+}
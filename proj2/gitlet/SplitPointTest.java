@@ -0,0 +1,150 @@
+package gitlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests of SplitPoint.find on small commit graphs built with
+ *  CommitGraph.add, as commit and merge would build them.
+ *
+ *  @author Eve Stroud
+ */
+public class SplitPointTest {
+
+    /** Directory holding the graph under test. */
+    private File dir;
+    /** The graph under test. */
+    private CommitGraph graph;
+    /** Its initial commit. */
+    private Commit initial;
+
+    /** Creates a graph holding only an initial commit. */
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("gitlet-graph").toFile();
+        graph = new CommitGraph(dir);
+        initial = new Commit();
+        graph.add(initial);
+    }
+
+    /** Deletes the graph. */
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /** A commit and one of its ancestors split at the ancestor, whichever
+     *  of the two is given first. */
+    @Test
+    public void ancestorIsSplitPoint() {
+        Commit first = commit("first", initial);
+        Commit second = commit("second", first);
+        Commit third = commit("third", second);
+        assertEquals(at(first), find(third, first));
+        assertEquals(at(first), find(first, third));
+        assertEquals(at(third), find(third, third));
+        assertEquals(at(initial), find(initial, third));
+    }
+
+    /** Two branches split at the last commit they share. */
+    @Test
+    public void branchesSplitAtLastSharedCommit() {
+        Commit base = commit("base", initial);
+        Commit a1 = commit("a1", base);
+        Commit b1 = commit("b1", base);
+        Commit a2 = commit("a2", a1);
+        Commit b2 = commit("b2", b1);
+        Commit b3 = commit("b3", b2);
+        assertEquals(at(base), find(a2, b3));
+        assertEquals(at(base), find(b3, a2));
+    }
+
+    /** A branch merged into another is an ancestor of it through the second
+     *  parent of the merge. */
+    @Test
+    public void mergedBranchIsAncestor() {
+        Commit base = commit("base", initial);
+        Commit a1 = commit("a1", base);
+        Commit b1 = commit("b1", base);
+        Commit merged = merge("merged", a1, b1);
+        Commit a2 = commit("a2", merged);
+        assertEquals(at(b1), find(a2, b1));
+        assertEquals(at(b1), find(b1, a2));
+        Commit b2 = commit("b2", b1);
+        assertEquals(at(b1), find(a2, b2));
+    }
+
+    /** In a criss-cross merge, each branch merged the other, so both of the
+     *  commits merged are latest common ancestors. Either is a split point,
+     *  but their own common ancestor is not. */
+    @Test
+    public void crissCrossMerge() {
+        Commit base = commit("base", initial);
+        Commit a1 = commit("a1", base);
+        Commit b1 = commit("b1", base);
+        Commit a2 = merge("a2", a1, b1);
+        Commit b2 = merge("b2", b1, a1);
+        Commit a3 = commit("a3", a2);
+        for (int split : new int[] {find(a2, b2), find(b2, a2), find(a3, b2)}) {
+            assertTrue(split == at(a1) || split == at(b1));
+        }
+    }
+
+    /** Commits on the shallow boundary have their parents cut off, so a merge
+     *  of two of them is their only common descendant, and commits above
+     *  each of them have no common ancestor in the graph. */
+    @Test
+    public void mergeOfTwoBoundaryCommits() {
+        Commit left = new Commit(Utils.sha1("cut off left"), "", "left");
+        Commit right = new Commit(Utils.sha1("cut off right"), "", "right");
+        graph.add(List.of(left, right));
+        assertEquals(-1, graph.parent(at(left)));
+        assertEquals(-1, graph.parent(at(right)));
+
+        Commit merged = merge("merged", left, right);
+        Commit above = commit("above", merged);
+        Commit leftChild = commit("left child", left);
+        Commit rightChild = commit("right child", right);
+        assertEquals(at(left), find(above, left));
+        assertEquals(at(right), find(right, above));
+        assertEquals(at(left), find(above, leftChild));
+        assertEquals(at(right), find(rightChild, above));
+        assertEquals(-1, find(leftChild, rightChild));
+        assertEquals(-1, find(left, right));
+    }
+
+    /** Adds and returns a commit with message MESSAGE and parent PARENT. */
+    private Commit commit(String message, Commit parent) {
+        Commit commit = new Commit(parent.hash, "", message);
+        graph.add(commit);
+        return commit;
+    }
+
+    /** Adds and returns a merge commit with message MESSAGE and parents
+     *  PARENT and MERGEPARENT. */
+    private Commit merge(String message, Commit parent, Commit mergeParent) {
+        Commit commit = new Commit(parent.hash, mergeParent.hash, "", message);
+        graph.add(commit);
+        return commit;
+    }
+
+    /** Returns the position of COMMIT in the graph. */
+    private int at(Commit commit) {
+        return graph.indexOf(commit.hash);
+    }
+
+    /** Returns the position of the split point SplitPoint finds for A and B. */
+    private int find(Commit a, Commit b) {
+        return SplitPoint.find(graph, at(a), at(b));
+    }
+}
@@ -1,23 +1,194 @@
 package gitlet;
 
+import java.io.ObjectStreamException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
 
-/** Stores the file tree of a Commit.
+/** Stores one directory of the file tree of a Commit. Subdirectories are
+ * stored as Trees of their own, so an unchanged subdirectory is shared by
+ * every commit that contains it.
  *
  * @author Eve Stroud
  * */
 public class Tree implements Dumpable, Iterable<String> {
 
-    /** Maps file names to the hash codes of their version in the commit. */
+    /** Serial version of trees as written before they had subdirectories,
+     * so that the trees of those repositories can still be read. */
+    private static final long serialVersionUID = 3853580311186113641L;
+
+    /** Maps names of files in this directory to the hash codes of their
+     * version in the commit. */
     private final Map<String, String> files;
+    /** Maps names of subdirectories to the hash codes of their Trees. */
+    private final Map<String, String> trees;
     /** The hash code of this Tree. */
     final String hash;
 
-    /** Creates a tree out of a map of file names and their staged versions. */
-    public Tree(Map<String, String> staged) {
-        files = staged;
-        hash = Utils.sha1(files.toString());
+    /** Creates a tree out of maps of file names to their versions and
+     * subdirectory names to their Trees. */
+    public Tree(Map<String, String> files, Map<String, String> trees) {
+        this.files = files;
+        this.trees = trees;
+        hash = Utils.sha1(files.toString(), trees.toString());
+    }
+
+    /** Creates a copy of TREE with subdirectories TREES and the same hash. */
+    private Tree(Tree tree, Map<String, String> trees) {
+        files = tree.files;
+        this.trees = trees;
+        hash = tree.hash;
+    }
+
+    /** Returns this Tree as read by Java serialization. A Tree written before
+     * Trees had subdirectories has none: it is the root directory, and holds
+     * every file of its commit. */
+    private Object readResolve() throws ObjectStreamException {
+        return trees != null ? this : new Tree(this, new TreeMap<>());
+    }
+
+    /** Returns the hash of the Tree obtained by applying CHANGES to the Tree
+     * with hash TREEHASH, writing any new Trees to the object store.
+     *
+     * Only the Trees of directories containing a changed path are read and
+     * rewritten; every other subdirectory keeps its existing hash.
+     *
+     * @param treeHash Hash of the Tree to change, or an empty string for an
+     *                 empty directory.
+     * @param changes Maps paths relative to the directory, with '/'
+     *                separating components, to the hashes of their new
+     *                versions, or to empty strings for removed files.
+     * @return The hash of the new Tree, or an empty string if it is empty.
+     */
+    public static String update(String treeHash, Map<String, String> changes) {
+        Tree tree = read(treeHash);
+        Map<String, String> files = new TreeMap<>(tree.files);
+        Map<String, String> trees = new TreeMap<>(tree.trees);
+        Map<String, Map<String, String>> subChanges = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int split = path.indexOf('/');
+            if (split >= 0) {
+                subChanges.computeIfAbsent(path.substring(0, split), k -> new TreeMap<>())
+                          .put(path.substring(split + 1), change.getValue());
+            } else if (change.getValue().isEmpty()) {
+                files.remove(path);
+            } else {
+                files.put(path, change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> sub : subChanges.entrySet()) {
+            String subTree = update(trees.getOrDefault(sub.getKey(), ""), sub.getValue());
+            if (subTree.isEmpty()) {
+                trees.remove(sub.getKey());
+            } else {
+                trees.put(sub.getKey(), subTree);
+            }
+        }
+        if (files.isEmpty() && trees.isEmpty()) {
+            return "";
+        }
+        Tree result = new Tree(files, trees);
+        Utils.writeObject(result.hash, result);
+        return result.hash;
+    }
+
+    /** Returns the hash of the version of the file at PATH in the Tree with
+     * hash TREEHASH, or an empty string if it has no such file. */
+    static String lookup(String treeHash, String path) {
+        int split = path.indexOf('/');
+        while (split >= 0 && !treeHash.isEmpty()) {
+            treeHash = read(treeHash).trees.getOrDefault(path.substring(0, split), "");
+            path = path.substring(split + 1);
+            split = path.indexOf('/');
+        }
+        return treeHash.isEmpty() ? "" : read(treeHash).files.getOrDefault(path, "");
+    }
+
+    /** Adds to CHANGES every file whose version differs between the Trees
+     * with hashes FROM and TO, mapping its path, prefixed with PREFIX, to its
+     * version in TO, or to an empty string if TO has no such file.
+     *
+     * Subdirectories with the same hash in both Trees are skipped without
+     * being read, so the cost is proportional to the size of the directories
+     * that differ rather than to the size of the whole tree.
+     */
+    static void diff(String from, String to, String prefix, Map<String, String> changes) {
+        diff(from, to, prefix, changes, dir -> true);
+    }
+
+    /** Adds to CHANGES every file whose version differs between the Trees
+     * with hashes FROM and TO, as diff does, but only looks in the
+     * directories whose paths, prefixed with PREFIX and without a trailing
+     * '/', are accepted by INCLUDED. The other subdirectories are not read.
+     */
+    static void diff(String from, String to, String prefix, Map<String, String> changes,
+                     Predicate<String> included) {
+        if (from.equals(to)) {
+            return;
+        }
+        Tree a = read(from);
+        Tree b = read(to);
+        for (Map.Entry<String, String> file : b.files.entrySet()) {
+            if (!file.getValue().equals(a.files.get(file.getKey()))) {
+                changes.put(prefix + file.getKey(), file.getValue());
+            }
+        }
+        for (String file : a.files.keySet()) {
+            if (!b.files.containsKey(file)) {
+                changes.put(prefix + file, "");
+            }
+        }
+        Set<String> dirs = new TreeSet<>(a.trees.keySet());
+        dirs.addAll(b.trees.keySet());
+        for (String dir : dirs) {
+            if (included.test(prefix + dir)) {
+                diff(a.trees.getOrDefault(dir, ""), b.trees.getOrDefault(dir, ""),
+                     prefix + dir + "/", changes, included);
+            }
+        }
+    }
+
+    /** Adds to PATHS each version of a file in the Tree with hash HASH or
+     * its subdirectories that is not in PATHS yet, mapping it to the path of
+     * the file prefixed with PREFIX. Trees whose hashes are in SEEN are not
+     * read, and the others are added to SEEN.
+     */
+    static void paths(String hash, String prefix, Map<String, String> paths, Set<String> seen) {
+        if (hash.isEmpty() || !seen.add(hash)) {
+            return;
+        }
+        Tree tree = read(hash);
+        for (Map.Entry<String, String> file : tree.files.entrySet()) {
+            paths.putIfAbsent(file.getValue(), prefix + file.getKey());
+        }
+        for (Map.Entry<String, String> dir : tree.trees.entrySet()) {
+            paths(dir.getValue(), prefix + dir.getKey() + "/", paths, seen);
+        }
+    }
+
+    /** Returns the hashes of the versions of the files in this directory. */
+    Collection<String> fileVersions() {
+        return files.values();
+    }
+
+    /** Returns the hashes of the Trees of the subdirectories of this
+     * directory. */
+    Collection<String> subtrees() {
+        return trees.values();
+    }
+
+    /** Returns the Tree with hash TREEHASH, or an empty Tree if TREEHASH is
+     * an empty string. */
+    static Tree read(String treeHash) {
+        if (treeHash.isEmpty()) {
+            return new Tree(new TreeMap<>(), new TreeMap<>());
+        }
+        return Utils.readObject(treeHash, Tree.class);
     }
 
     /** Return a string representation of the information stored in the Tree. */
@@ -28,6 +199,13 @@ public class Tree implements Dumpable, Iterable<String> {
             s.append(file);
             s.append(":\t");
             s.append(files.get(file));
+            s.append("\n");
+        }
+        for (String tree: trees.keySet()) {
+            s.append(tree);
+            s.append("/:\t");
+            s.append(trees.get(tree));
+            s.append("\n");
         }
         return s.toString();
     }
@@ -37,8 +215,9 @@ public class Tree implements Dumpable, Iterable<String> {
         System.out.println(this);
     }
 
+    /** Returns an iterator over the names of the files in this directory. */
     @Override
     public Iterator<String> iterator() {
-        return null;
+        return files.keySet().iterator();
     }
 }
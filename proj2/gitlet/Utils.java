@@ -1,22 +1,45 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.Formatter;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 
 /** Assorted utilities.
@@ -63,6 +86,56 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Size of the buffer used to stream file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returns the SHA-1 hash of the contents of FILE.  The file is read
+     *  through a fixed-size buffer, so memory use does not depend on its
+     *  size.  Throws IllegalArgumentException in case of problems. */
+    static String sha1File(File file) {
+        MessageDigest md = sha1Digest();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytesToHex(md.digest());
+    }
+
+    /** Returns a new SHA-1 MessageDigest. */
+    private static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the raw bytes of the hexadecimal hash HASH. */
+    static byte[] hexToBytes(String hash) {
+        byte[] bytes = new byte[hash.length() / 2];
+        for (int i = 0; i < bytes.length; i += 1) {
+            bytes[i] = (byte) ((Character.digit(hash.charAt(2 * i), 16) << 4)
+                               | Character.digit(hash.charAt(2 * i + 1), 16));
+        }
+        return bytes;
+    }
+
+    /** Returns the hexadecimal numeral of the raw hash BYTES. */
+    static String bytesToHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -111,6 +184,41 @@ class Utils {
         return new String(readContents(file), StandardCharsets.UTF_8);
     }
 
+    /** Whether the file system provides the "unix" attribute view, from
+     *  which statFile takes inode numbers. */
+    private static volatile boolean unixAttributes = true;
+
+    /** Return the stat information of FILE as {size, modification time in
+     *  nanoseconds, inode}, or null if FILE is not a normal file.  The inode
+     *  number is 0 where the file system does not provide one. */
+    static long[] statFile(File file) {
+        try {
+            if (unixAttributes) {
+                try {
+                    Map<String, Object> attrs = Files.readAttributes(file.toPath(),
+                        "unix:isRegularFile,size,lastModifiedTime,ino");
+                    if (!(Boolean) attrs.get("isRegularFile")) {
+                        return null;
+                    }
+                    return new long[] {(Long) attrs.get("size"),
+                        ((FileTime) attrs.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS),
+                        (Long) attrs.get("ino")};
+                } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+                    unixAttributes = false;
+                }
+            }
+            BasicFileAttributes attrs =
+                Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            return new long[] {attrs.size(),
+                attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), 0};
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
     /** Create a new file from a File. */
     static void createFile(File file) {
         try {
@@ -217,13 +325,460 @@ class Utils {
         return Paths.get(first.getPath(), others).toFile();
     }
 
-    static File getFileFromHash(String hash) {
-        String dirName = hash.substring(0, 2);
-        String fileName = hash.substring(2);
-        File dir = join(Repository.OBJECTS_DIR, dirName);
-        return join(dir, fileName);
+    /* OBJECT STORE */
+
+    /* Every stored object begins with an encoding tag, RAW or DEFLATE,
+     * followed by its contents in that encoding.  Which encoding is used for
+     * new objects is chosen by the compression setting of the repository:
+     * "none", "deflate", or "deflate:LEVEL" for a Deflate level from 0 to 9.
+     *
+     * When the chunking setting of the repository is "true", large blobs are
+     * instead split into content-defined chunks by a Chunker, each stored as
+     * an object of its own, and the blob is stored with the tag CHUNKED
+     * followed by a manifest: the number of chunks and their raw hashes.
+     *
+     * Objects written before encoding tags were introduced have none: they
+     * are their contents as is, which may begin with any byte.  So objects
+     * are only expected to begin with a tag in a repository whose format
+     * setting, recorded by init, is TAGGED_FORMAT.  In any other repository
+     * new objects are stored as is too, and are never compressed or split
+     * into chunks.
+     *
+     * Objects are looked up in the pack, and then in the ObjectStore chosen
+     * by the objectstore setting, where new objects are written.
+     *
+     * While objects are batched, as by a RepositorySession, new objects up
+     * to BATCH_LIMIT bytes long are held in memory instead of being written
+     * as loose files, and are read from there, until endBatch hands them
+     * over to be appended to the pack. */
+
+    /** Encoding tag of an object whose contents are stored as is. */
+    static final byte RAW = 0;
+    /** Encoding tag of an object whose contents are compressed with Deflate. */
+    static final byte DEFLATE = 1;
+    /** Encoding tag of a blob stored as a manifest of chunks. */
+    static final byte CHUNKED = 2;
+    /** Format setting of a repository whose stored objects begin with an
+     *  encoding tag. */
+    static final String TAGGED_FORMAT = "1";
+    /** Size of the smallest blob that is split into chunks. */
+    static final int CHUNKING_THRESHOLD = 4 * Chunker.MAX_SIZE;
+    /** Compression level returned for the "none" compression setting. */
+    static final int UNCOMPRESSED = -2;
+    /** Size of the largest file whose blob is held in memory while objects
+     *  are batched. */
+    static final int BATCH_LIMIT = 1 << 16;
+
+    /** Stored forms of the objects held in memory, by hash, or null if
+     *  objects are not being batched. */
+    private static volatile Map<String, byte[]> batch;
+    /** The object store of the current repository, or null if not opened
+     *  yet. */
+    private static ObjectStore objectStore;
+
+    /** Returns the object store of the current repository. */
+    static synchronized ObjectStore objectStore() {
+        if (objectStore == null) {
+            objectStore = ObjectStore.open(Config.get("objectstore", "loose"),
+                                           Repository.OBJECTS_DIR);
+        }
+        return objectStore;
+    }
+
+    /** Forgets the object store of the current repository, so it is opened
+     *  again on next use. */
+    static synchronized void resetObjectStore() {
+        objectStore = null;
+    }
+
+    /** Starts holding new objects in memory rather than writing them as
+     *  loose files. */
+    static void beginBatch() {
+        batch = new ConcurrentHashMap<>();
+    }
+
+    /** Stops holding new objects in memory, and returns the stored forms of
+     *  those held, by hash, which must then be stored elsewhere. */
+    static Map<String, byte[]> endBatch() {
+        Map<String, byte[]> objects = batch;
+        batch = null;
+        return objects == null ? Map.of() : objects;
+    }
+
+    /** Returns whether the stored objects of the current repository begin
+     *  with an encoding tag. */
+    static boolean tagged() {
+        return Config.get("format", "").equals(TAGGED_FORMAT);
+    }
+
+    /** Returns the Deflate level named by the compression setting SETTING, or
+     *  UNCOMPRESSED if SETTING is "none".  Throws IllegalArgumentException if
+     *  SETTING is not a valid compression setting. */
+    static int compressionLevel(String setting) {
+        if (setting.equals("none")) {
+            return UNCOMPRESSED;
+        } else if (setting.equals("deflate")) {
+            return Deflater.DEFAULT_COMPRESSION;
+        } else if (setting.matches("deflate:[0-9]")) {
+            return setting.charAt(setting.length() - 1) - '0';
+        }
+        throw new IllegalArgumentException("invalid compression setting");
+    }
+
+    /** Writes the encoding tag for new objects to OUT and returns a stream
+     *  that encodes what is written to it onto OUT.  Returns OUT itself if
+     *  the objects of the current repository have no encoding tags. */
+    private static OutputStream encode(OutputStream out) throws IOException {
+        if (!tagged()) {
+            return out;
+        }
+        int level = compressionLevel(Config.get("compression", "deflate"));
+        if (level == UNCOMPRESSED) {
+            out.write(RAW);
+            return out;
+        }
+        out.write(DEFLATE);
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /** Reads the encoding tag of a stored object from IN and returns a
+     *  stream of its decoded contents.  Returns IN itself if the objects of
+     *  the current repository have no encoding tags. */
+    static InputStream decode(InputStream in) throws IOException {
+        if (!tagged()) {
+            return in;
+        }
+        int tag = in.read();
+        if (tag == -1 || tag == RAW) {
+            return in;
+        } else if (tag == DEFLATE) {
+            return new InflaterInputStream(in);
+        } else if (tag == CHUNKED) {
+            List<String> chunks = readManifest(in);
+            in.close();
+            Iterator<String> next = chunks.iterator();
+            return new SequenceInputStream(new Enumeration<InputStream>() {
+                @Override
+                public boolean hasMoreElements() {
+                    return next.hasNext();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    return openObject(next.next());
+                }
+            });
+        }
+        in.close();
+        throw new IOException("unknown encoding tag " + tag);
+    }
+
+    /** Reads the manifest of a chunked blob from IN, following its encoding
+     *  tag, and returns the hashes of its chunks in order. */
+    private static List<String> readManifest(InputStream in) throws IOException {
+        DataInputStream manifest = new DataInputStream(in);
+        List<String> chunks = new ArrayList<>();
+        byte[] hash = new byte[UID_LENGTH / 2];
+        for (int i = manifest.readInt(); i > 0; i -= 1) {
+            manifest.readFully(hash);
+            chunks.add(bytesToHex(hash));
+        }
+        return chunks;
+    }
+
+    /** Returns the hashes of the chunks of the blob with hash HASH, or an
+     *  empty list if it is not stored as chunks.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static List<String> chunksOf(String hash) {
+        try (InputStream in = openStored(hash)) {
+            return tagged() && in.read() == CHUNKED ? readManifest(in) : List.of();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies the contents of FILE into the object store as a blob and
+     *  returns its hash.  The contents are hashed while they are encoded and
+     *  streamed to a temporary file, which is then renamed into place, so the
+     *  file is read only once and never held in memory.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String writeBlob(File file) {
+        if (file.length() >= CHUNKING_THRESHOLD && tagged()
+            && Config.get("chunking", "false").equals("true")) {
+            return writeChunkedBlob(file);
+        } else if (batch != null && file.length() <= BATCH_LIMIT) {
+            MessageDigest md = sha1Digest();
+            ByteArrayOutputStream stored = new ByteArrayOutputStream();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), md);
+                 OutputStream out = encode(stored)) {
+                in.transferTo(out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            String hash = bytesToHex(md.digest());
+            batchObject(hash, stored.toByteArray());
+            return hash;
+        }
+        MessageDigest md = sha1Digest();
+        File tmp = null;
+        try {
+            Repository.OBJECTS_DIR.mkdirs();
+            tmp = File.createTempFile("blob", ".tmp", Repository.OBJECTS_DIR);
+            try (InputStream in = new DigestInputStream(
+                     Files.newInputStream(file.toPath()), md);
+                 OutputStream out = encode(new BufferedOutputStream(
+                     Files.newOutputStream(tmp.toPath()), BUFFER_SIZE))) {
+                in.transferTo(out);
+            }
+            String hash = bytesToHex(md.digest());
+            storeObject(hash, tmp);
+            return hash;
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies the contents of FILE into the object store as a chunked blob
+     *  and returns its hash.  Only chunks that are not already stored are
+     *  written.  Throws IllegalArgumentException in case of problems. */
+    private static String writeChunkedBlob(File file) {
+        MessageDigest md = sha1Digest();
+        Chunker chunker = new Chunker();
+        File tmp = null;
+        try {
+            try (InputStream in = new DigestInputStream(
+                     Files.newInputStream(file.toPath()), md)) {
+                in.transferTo(chunker);
+            }
+            chunker.close();
+            String hash = bytesToHex(md.digest());
+            tmp = File.createTempFile("blob", ".tmp", Repository.OBJECTS_DIR);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     Files.newOutputStream(tmp.toPath())))) {
+                out.write(CHUNKED);
+                out.writeInt(chunker.hashes().size());
+                for (String chunk : chunker.hashes()) {
+                    out.write(hexToBytes(chunk));
+                }
+            }
+            storeObject(hash, tmp);
+            return hash;
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write OBJ to the object store under the hash HASH, unless an object
+     *  with that hash is already stored, and keep it in OBJECT_CACHE.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void writeObject(String hash, Serializable obj) {
+        if (!objectExists(hash)) {
+            byte[] contents = serialize(obj);
+            writeObjectContents(hash, contents);
+            OBJECT_CACHE.put(hash, obj, contents.length);
+        }
     }
 
+    /** Write CONTENTS to the object store under the hash HASH, unless an
+     *  object with that hash is already stored.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void writeObjectContents(String hash, byte[] contents) {
+        if (objectExists(hash)) {
+            return;
+        } else if (batch != null) {
+            ByteArrayOutputStream stored = new ByteArrayOutputStream();
+            try (OutputStream out = encode(stored)) {
+                out.write(contents);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            batchObject(hash, stored.toByteArray());
+            return;
+        }
+        File tmp = null;
+        try {
+            Repository.OBJECTS_DIR.mkdirs();
+            tmp = File.createTempFile("obj", ".tmp", Repository.OBJECTS_DIR);
+            try (OutputStream out = encode(new BufferedOutputStream(
+                     Files.newOutputStream(tmp.toPath())))) {
+                out.write(contents);
+            }
+            storeObject(hash, tmp);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write STORED, the stored form of an object starting with its encoding
+     *  tag if it has one, to the object store under the hash HASH, unless an object with
+     *  that hash is already stored.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static void writeStoredObject(String hash, byte[] stored) {
+        if (objectExists(hash)) {
+            return;
+        } else if (batch != null) {
+            batchObject(hash, stored);
+            return;
+        }
+        objectStore().write(hash, stored);
+    }
+
+    /** Moves the encoded object in the temporary file TMP into the object
+     *  store under HASH, or deletes TMP if that object is already stored. */
+    private static void storeObject(String hash, File tmp) throws IOException {
+        if (objectExists(hash)) {
+            tmp.delete();
+        } else {
+            objectStore().store(hash, tmp);
+        }
+    }
+
+    /** Holds STORED, the stored form of the object with hash HASH, in
+     *  memory while objects are batched, unless it is stored already. */
+    private static void batchObject(String hash, byte[] stored) {
+        if (!objectExists(hash)) {
+            batch.putIfAbsent(hash, stored);
+        }
+    }
+
+    /** Returns the stored form of the object with hash HASH if it is held in
+     *  memory, or null. */
+    private static byte[] batched(String hash) {
+        Map<String, byte[]> objects = batch;
+        return objects == null ? null : objects.get(hash);
+    }
+
+    /** Returns whether the object with hash HASH is stored in the repository,
+     *  either in the pack or in the object store, or held in memory. */
+    static boolean objectExists(String hash) {
+        return batched(hash) != null || Pack.repositoryPack().contains(hash)
+            || objectStore().contains(hash);
+    }
+
+    /** Returns a stream of the decoded contents of the object with hash HASH,
+     *  looking it up in the pack index before falling back to the object
+     *  store.  Throws IllegalArgumentException in case of problems. */
+    static InputStream openObject(String hash) {
+        try {
+            return decode(openStored(hash));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the stored form of the object with hash HASH,
+     *  starting with its encoding tag. */
+    private static InputStream openStored(String hash) throws IOException {
+        byte[] batched = batched(hash);
+        if (batched != null) {
+            return new ByteArrayInputStream(batched);
+        }
+        InputStream in = Pack.repositoryPack().open(hash);
+        if (in == null) {
+            in = objectStore().open(hash);
+        }
+        if (in == null) {
+            throw new NoSuchFileException(hash);
+        }
+        return in;
+    }
+
+    /** Writes the decoded contents of the object with hash HASH to FILE,
+     *  creating it and its parent directories or overwriting it as needed.
+     *  Objects stored as RAW, or without a tag, are copied without passing
+     *  through the Java heap: packed ones are written straight from the
+     *  mapped pack, and loose ones, if the object store keeps loose objects,
+     *  with FileChannel.transferTo.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static void copyObjectTo(String hash, File file) {
+        file.getParentFile().mkdirs();
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer packed = Pack.repositoryPack().contents(hash);
+            if (packed == null && batched(hash) != null) {
+                packed = ByteBuffer.wrap(batched(hash));
+            }
+            int tagLength = tagged() ? 1 : 0;
+            if (packed != null && (tagLength == 0 || packed.get(packed.position()) == RAW)) {
+                ByteBuffer contents = packed.position(packed.position() + tagLength);
+                while (contents.hasRemaining()) {
+                    out.write(contents);
+                }
+                return;
+            }
+            if (packed == null && objectStore() instanceof LooseObjectStore) {
+                File loose = ((LooseObjectStore) objectStore()).fileOf(hash);
+                try (FileChannel in = FileChannel.open(loose.toPath(), StandardOpenOption.READ)) {
+                    ByteBuffer tag = ByteBuffer.allocate(1);
+                    in.read(tag, 0);
+                    if (tagLength == 0 || tag.get(0) == RAW) {
+                        long size = in.size() - tagLength;
+                        for (long done = 0; done < size; ) {
+                            done += in.transferTo(tagLength + done, size - done, out);
+                        }
+                        return;
+                    }
+                }
+            }
+            try (InputStream in = openObject(hash)) {
+                in.transferTo(Channels.newOutputStream(out));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the decoded contents of the object with hash HASH as a byte
+     *  array.  Throws IllegalArgumentException in case of problems. */
+    static byte[] readObjectContents(String hash) {
+        try (InputStream in = openObject(hash)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Objects recently read with readObject. */
+    static final ObjectCache OBJECT_CACHE = new ObjectCache(ObjectCache.DEFAULT_CAPACITY);
+
+    /** Return the object with hash HASH, casting it to EXPECTEDCLASS.
+     *  Objects are kept in OBJECT_CACHE, so reading the same object again
+     *  does not deserialize it again.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static <T extends Serializable> T readObject(String hash,
+                                                 Class<T> expectedClass) {
+        Serializable cached = OBJECT_CACHE.get(hash);
+        if (cached != null) {
+            try {
+                return expectedClass.cast(cached);
+            } catch (ClassCastException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        byte[] contents = readObjectContents(hash);
+        T result = deserialize(contents, expectedClass);
+        OBJECT_CACHE.put(hash, result, contents.length);
+        return result;
+    }
 
     /* SERIALIZATION UTILITIES */
 
@@ -240,6 +795,22 @@ class Utils {
         }
     }
 
+    /** Returns the object serialized in BYTES, casting it to EXPECTEDCLASS.
+     *  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */